@@ -0,0 +1,76 @@
+package com.postgrad.securitydemo.benchmark;
+
+import com.postgrad.securitydemo.model.Resource;
+import com.postgrad.securitydemo.repository.ResourceRepository;
+import com.postgrad.securitydemo.testing.KeycloakStub;
+import com.postgrad.securitydemo.testing.StubbedApplication;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The application, booted once per fork against a {@link KeycloakStub} instead of Keycloak.
+ *
+ * A handful of resources owned by {@link #OWNER} is seeded so the resource benchmarks have
+ * rows to read.
+ */
+@State(Scope.Benchmark)
+public class ApplicationState {
+
+    public static final String OWNER = "alice";
+
+    private KeycloakStub keycloak;
+    private ConfigurableApplicationContext context;
+    private String userToken;
+    private String adminToken;
+    private Long resourceId;
+
+    @Setup(Level.Trial)
+    public void start() {
+        keycloak = KeycloakStub.start();
+        context = StubbedApplication.start(keycloak);
+
+        ResourceRepository repository = context.getBean(ResourceRepository.class);
+        List<Resource> seeded = repository.saveAll(List.of(
+                new Resource(null, "Benchmark resource", "Owned by " + OWNER, OWNER, false, "USER", null),
+                new Resource(null, "Public resource", "Visible to all", OWNER, true, null, null),
+                new Resource(null, "Admin resource", "Admins only", "admin", false, "ADMIN", null)));
+        resourceId = seeded.get(0).getId();
+
+        userToken = keycloak.token(OWNER, List.of("user", "offline_access"),
+                Map.of("account", List.of("manage-account", "view-profile")));
+        adminToken = keycloak.token("admin", List.of("admin", "user", "offline_access"),
+                Map.of("account", List.of("manage-account", "view-profile")));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        context.close();
+        keycloak.close();
+    }
+
+    public ConfigurableApplicationContext context() {
+        return context;
+    }
+
+    public String userToken() {
+        return userToken;
+    }
+
+    public String adminToken() {
+        return adminToken;
+    }
+
+    /**
+     * @return ID of a private resource owned by {@link #OWNER}
+     */
+    public Long resourceId() {
+        return resourceId;
+    }
+}
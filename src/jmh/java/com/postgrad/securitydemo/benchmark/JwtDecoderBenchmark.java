@@ -0,0 +1,80 @@
+package com.postgrad.securitydemo.benchmark;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.ImmutableJWKSet;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import com.postgrad.securitydemo.config.CachingJwtDecoder;
+import com.postgrad.securitydemo.testing.KeycloakStub;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bearer token decode and verification, built the same way as SecurityConfig#jwtDecoder
+ * but against an in-memory copy of the Keycloak stub's key set.
+ *
+ * "verify" measures the full RS256 check on every call; "cached" measures a repeat token
+ * answered by the CachingJwtDecoder.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class JwtDecoderBenchmark {
+
+    @Param({"verify", "cached"})
+    public String mode;
+
+    private KeycloakStub keycloak;
+    private JwtDecoder decoder;
+    private String token;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keycloak = KeycloakStub.start();
+        token = keycloak.token("alice", List.of("user", "offline_access", "uma_authorization"),
+                Map.of("account", List.of("manage-account", "view-profile")));
+
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256,
+                new ImmutableJWKSet<>(new JWKSet(keycloak.key().toPublicJWK()))));
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {});
+        NimbusJwtDecoder nimbusDecoder = new NimbusJwtDecoder(jwtProcessor);
+        nimbusDecoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(keycloak.issuer()));
+
+        decoder = mode.equals("cached") ? new CachingJwtDecoder(nimbusDecoder, 10_000) : nimbusDecoder;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        keycloak.close();
+    }
+
+    @Benchmark
+    public Jwt decode() {
+        return decoder.decode(token);
+    }
+}
@@ -0,0 +1,78 @@
+package com.postgrad.securitydemo.benchmark;
+
+import com.postgrad.securitydemo.dto.ResourceSummary;
+import com.postgrad.securitydemo.model.Resource;
+import com.postgrad.securitydemo.repository.ResourceRepository;
+import com.postgrad.securitydemo.service.ResourceService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of method security on ResourceService: each secured call is paired with the bare
+ * repository call it wraps, so the difference is the authorization (and transaction)
+ * overhead of the proxy.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class ResourceServiceBenchmark {
+
+    private ResourceService resourceService;
+    private ResourceRepository resourceRepository;
+    private Long resourceId;
+
+    @Setup(Level.Trial)
+    public void setUp(ApplicationState application) {
+        resourceService = application.context().getBean(ResourceService.class);
+        resourceRepository = application.context().getBean(ResourceRepository.class);
+        resourceId = application.resourceId();
+        // Method security reads the thread's context; JMH runs each thread's trial setup on that thread
+        SecurityContextHolder.getContext().setAuthentication(UsernamePasswordAuthenticationToken.authenticated(
+                ApplicationState.OWNER, null, AuthorityUtils.createAuthorityList("ROLE_USER")));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public Optional<Resource> getResourceById() {
+        return resourceService.getResourceById(resourceId);
+    }
+
+    @Benchmark
+    public Optional<Resource> getResourceByIdBaseline() {
+        return resourceRepository.findById(resourceId);
+    }
+
+    @Benchmark
+    public List<ResourceSummary> getResourcesByRequiredRole() {
+        return resourceService.getResourcesByRequiredRole("USER");
+    }
+
+    @Benchmark
+    public List<ResourceSummary> getResourcesByRequiredRoleBaseline() {
+        return resourceRepository.findByRequiredRole("USER");
+    }
+}
@@ -0,0 +1,77 @@
+package com.postgrad.securitydemo.benchmark;
+
+import jakarta.servlet.Filter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One pass through the springSecurityFilterChain per invocation, for an anonymous request to
+ * a public endpoint and bearer-token requests to user and admin endpoints. The chain ends in
+ * an empty MockFilterChain, so controllers are not part of the measurement.
+ *
+ * The user and admin tokens repeat, so with the default configuration their signature is
+ * checked once and later passes hit the decoder and authority caches.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class SecurityFilterChainBenchmark {
+
+    @Param({"public", "user", "admin"})
+    public String path;
+
+    private Filter filterChain;
+    private String uri;
+    private String authorization;
+
+    @Setup(Level.Trial)
+    public void setUp(ApplicationState application) {
+        filterChain = application.context().getBean("springSecurityFilterChain", Filter.class);
+        switch (path) {
+            case "public" -> uri = "/api/public/resources";
+            case "user" -> {
+                uri = "/api/user/resources";
+                authorization = "Bearer " + application.userToken();
+            }
+            case "admin" -> {
+                uri = "/api/admin/system/info";
+                authorization = "Bearer " + application.adminToken();
+            }
+            default -> throw new IllegalArgumentException("Unknown path " + path);
+        }
+    }
+
+    @Benchmark
+    public int doFilter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+        request.setServletPath(uri);
+        if (authorization != null) {
+            request.addHeader(HttpHeaders.AUTHORIZATION, authorization);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filterChain.doFilter(request, response, new MockFilterChain());
+        if (response.getStatus() != 200) {
+            throw new IllegalStateException(uri + " answered " + response.getStatus());
+        }
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,84 @@
+package com.postgrad.securitydemo.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Role mapping of SecurityConfig.KeycloakRoleConverter for Keycloak-shaped tokens.
+ *
+ * "few" is a typical end-user token (three realm roles, the account client); "many" is a
+ * service or admin token with 20 clients of 10 roles each.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class KeycloakRoleConverterBenchmark {
+
+    @Param({"few", "many"})
+    public String roles;
+
+    @Param({"false", "true"})
+    public boolean memoize;
+
+    private SecurityConfig.KeycloakRoleConverter converter;
+    private Jwt jwt;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        converter = new SecurityConfig.KeycloakRoleConverter(memoize, 1024);
+
+        Map<String, Object> resourceAccess = new LinkedHashMap<>();
+        List<String> realmRoles;
+        if (roles.equals("few")) {
+            realmRoles = List.of("user", "offline_access", "uma_authorization");
+            resourceAccess.put("account", Map.of("roles", List.of("manage-account", "view-profile")));
+        } else {
+            realmRoles = List.of("user", "admin", "offline_access", "uma_authorization", "default-roles-security-demo");
+            for (int client = 0; client < 20; client++) {
+                List<String> clientRoles = new ArrayList<>();
+                for (int role = 0; role < 10; role++) {
+                    clientRoles.add("client-" + client + "-role-" + role);
+                }
+                resourceAccess.put("client-" + client, Map.of("roles", clientRoles));
+            }
+        }
+
+        jwt = Jwt.withTokenValue("token")
+                .header("alg", "RS256")
+                .subject("alice")
+                .claim("scope", "openid profile email")
+                .claim("realm_access", Map.of("roles", realmRoles))
+                .claim("resource_access", resourceAccess)
+                .issuedAt(Instant.now())
+                .expiresAt(Instant.now().plusSeconds(3600))
+                .build();
+    }
+
+    @Benchmark
+    public Collection<GrantedAuthority> convert() {
+        return converter.convert(jwt);
+    }
+}
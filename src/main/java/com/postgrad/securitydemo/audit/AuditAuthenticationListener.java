@@ -0,0 +1,50 @@
+package com.postgrad.securitydemo.audit;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.event.EventListener;
+import org.springframework.security.authentication.event.AbstractAuthenticationFailureEvent;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+/**
+ * Records bearer token authentication outcomes in the audit trail.
+ *
+ * Authentication events are published synchronously on the request thread, so events that
+ * are sampled out return before anything is built.
+ */
+@Component
+@RequiredArgsConstructor
+public class AuditAuthenticationListener {
+
+    private final AuditTrail auditTrail;
+
+    @EventListener
+    public void onSuccess(AuthenticationSuccessEvent event) {
+        if (auditTrail.isSampled(AuditCategory.AUTHENTICATION_SUCCESS)) {
+            auditTrail.record(AuditEvent.of(AuditCategory.AUTHENTICATION_SUCCESS,
+                    event.getAuthentication(), currentRequest(), null));
+        }
+    }
+
+    @EventListener
+    public void onFailure(AbstractAuthenticationFailureEvent event) {
+        if (auditTrail.isSampled(AuditCategory.AUTHENTICATION_FAILURE)) {
+            auditTrail.record(AuditEvent.of(AuditCategory.AUTHENTICATION_FAILURE,
+                    event.getAuthentication(), currentRequest(), event.getException().getClass().getSimpleName()));
+        }
+    }
+
+    /**
+     * @return "METHOD /path" of the request being authenticated, null outside of a request
+     */
+    private static String currentRequest() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            return servletAttributes.getRequest().getMethod() + " " + servletAttributes.getRequest().getRequestURI();
+        }
+        return null;
+    }
+}
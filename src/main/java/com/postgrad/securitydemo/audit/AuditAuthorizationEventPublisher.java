@@ -0,0 +1,81 @@
+package com.postgrad.securitydemo.audit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Role;
+import org.springframework.security.authorization.AuthorityAuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationEventPublisher;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.authorization.method.MethodInvocationResult;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.stereotype.Component;
+import org.springframework.util.function.SingletonSupplier;
+
+import java.util.function.Supplier;
+
+/**
+ * Records URL and method security decisions in the audit trail.
+ *
+ * Spring Security hands every authorization decision to this publisher, on the request
+ * thread; the sample check comes first, so decisions that are not kept cost one random
+ * number. The audit trail is resolved on first use because method security picks up this
+ * bean while its infrastructure is still being created.
+ */
+@Component
+@Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+public class AuditAuthorizationEventPublisher implements AuthorizationEventPublisher {
+
+    private final Supplier<AuditTrail> auditTrail;
+
+    public AuditAuthorizationEventPublisher(ObjectProvider<AuditTrail> auditTrail) {
+        this.auditTrail = SingletonSupplier.of(auditTrail::getObject);
+    }
+
+    @Override
+    public <T> void publishAuthorizationEvent(Supplier<Authentication> authentication, T object,
+                                              AuthorizationResult result) {
+        if (result == null) {
+            // The manager abstained
+            return;
+        }
+        AuditCategory category = result.isGranted()
+                ? AuditCategory.AUTHORIZATION_GRANTED : AuditCategory.AUTHORIZATION_DENIED;
+        AuditTrail trail = auditTrail.get();
+        if (!trail.isSampled(category)) {
+            return;
+        }
+        String detail = result instanceof AuthorityAuthorizationDecision decision
+                ? String.valueOf(decision.getAuthorities()) : null;
+        trail.record(AuditEvent.of(category, authentication.get(), target(object), detail));
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public <T> void publishAuthorizationEvent(Supplier<Authentication> authentication, T object,
+                                              AuthorizationDecision decision) {
+        publishAuthorizationEvent(authentication, object, (AuthorizationResult) decision);
+    }
+
+    /**
+     * Describes the secured object as "METHOD /path" or "SimpleClassName.method"
+     */
+    private static String target(Object object) {
+        if (object instanceof MethodInvocationResult result) {
+            object = result.getMethodInvocation();
+        }
+        if (object instanceof RequestAuthorizationContext context) {
+            object = context.getRequest();
+        }
+        if (object instanceof MethodInvocation invocation) {
+            return invocation.getMethod().getDeclaringClass().getSimpleName() + "." + invocation.getMethod().getName();
+        }
+        if (object instanceof HttpServletRequest request) {
+            return request.getMethod() + " " + request.getRequestURI();
+        }
+        return object == null ? null : object.getClass().getSimpleName();
+    }
+}
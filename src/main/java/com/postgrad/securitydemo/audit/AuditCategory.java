@@ -0,0 +1,12 @@
+package com.postgrad.securitydemo.audit;
+
+/**
+ * Kinds of security decisions recorded in the audit trail, each sampled separately.
+ */
+public enum AuditCategory {
+
+    AUTHENTICATION_SUCCESS,
+    AUTHENTICATION_FAILURE,
+    AUTHORIZATION_GRANTED,
+    AUTHORIZATION_DENIED
+}
@@ -0,0 +1,35 @@
+package com.postgrad.securitydemo.audit;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+
+/**
+ * One audit record, written as a single JSON line.
+ *
+ * @param timestamp When the decision was made, in epoch milliseconds
+ * @param category What kind of decision this was
+ * @param principal Name of the authenticated principal, or "-" if there is none or it must not be logged
+ * @param target What was accessed ("GET /api/user/resources", "ResourceService.getResourceById"), if known
+ * @param detail Additional information, e.g. the failure type; null if none
+ */
+public record AuditEvent(long timestamp, AuditCategory category, String principal, String target, String detail) {
+
+    static final String NO_PRINCIPAL = "-";
+
+    /**
+     * Creates an event stamped with the current time.
+     *
+     * @param authentication The authentication the decision was about, may be null
+     */
+    static AuditEvent of(AuditCategory category, Authentication authentication, String target, String detail) {
+        return new AuditEvent(System.currentTimeMillis(), category, principal(authentication), target, detail);
+    }
+
+    private static String principal(Authentication authentication) {
+        // The name of an unverified bearer token is the raw token itself
+        if (authentication == null || authentication instanceof BearerTokenAuthenticationToken) {
+            return NO_PRINCIPAL;
+        }
+        return authentication.getName();
+    }
+}
@@ -0,0 +1,168 @@
+package com.postgrad.securitydemo.audit;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous, sampled audit trail of security decisions.
+ *
+ * Request threads only decide whether to keep an event (per-category sample rate) and put it
+ * into a lock-free ring buffer; a single background writer drains the buffer and writes each
+ * event as one JSON line to the "security.audit" logger. If the buffer is full the event is
+ * dropped and counted, so a slow log appender can never stall request processing.
+ *
+ * Meters: audit.events (tagged with category and result: recorded, sampled-out or dropped)
+ * and audit.buffer.size.
+ */
+@Component
+@Slf4j
+public class AuditTrail {
+
+    private static final Logger auditLog = LoggerFactory.getLogger("security.audit");
+
+    private final ObjectMapper objectMapper;
+    private final MpscRingBuffer<AuditEvent> buffer;
+    private final Map<AuditCategory, Double> sampleRates = new EnumMap<>(AuditCategory.class);
+    private final Map<AuditCategory, Counter> recorded = new EnumMap<>(AuditCategory.class);
+    private final Map<AuditCategory, Counter> sampledOut = new EnumMap<>(AuditCategory.class);
+    private final Map<AuditCategory, Counter> dropped = new EnumMap<>(AuditCategory.class);
+    private final boolean enabled;
+    private final long idleParkNanos;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public AuditTrail(
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${security.audit.enabled:true}") boolean enabled,
+            @Value("${security.audit.buffer-capacity:8192}") int bufferCapacity,
+            @Value("${security.audit.writer-idle-wait:PT0.01S}") Duration writerIdleWait,
+            @Value("${security.audit.sample-rate.authentication-success:0.01}") double authenticationSuccessRate,
+            @Value("${security.audit.sample-rate.authentication-failure:1.0}") double authenticationFailureRate,
+            @Value("${security.audit.sample-rate.authorization-granted:0.01}") double authorizationGrantedRate,
+            @Value("${security.audit.sample-rate.authorization-denied:1.0}") double authorizationDeniedRate) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.buffer = new MpscRingBuffer<>(bufferCapacity);
+        this.idleParkNanos = writerIdleWait.toNanos();
+        sampleRates.put(AuditCategory.AUTHENTICATION_SUCCESS, authenticationSuccessRate);
+        sampleRates.put(AuditCategory.AUTHENTICATION_FAILURE, authenticationFailureRate);
+        sampleRates.put(AuditCategory.AUTHORIZATION_GRANTED, authorizationGrantedRate);
+        sampleRates.put(AuditCategory.AUTHORIZATION_DENIED, authorizationDeniedRate);
+
+        for (AuditCategory category : AuditCategory.values()) {
+            recorded.put(category, eventCounter(meterRegistry, category, "recorded"));
+            sampledOut.put(category, eventCounter(meterRegistry, category, "sampled-out"));
+            dropped.put(category, eventCounter(meterRegistry, category, "dropped"));
+        }
+        Gauge.builder("audit.buffer.size", buffer, MpscRingBuffer::size)
+                .description("Audit events waiting to be written")
+                .register(meterRegistry);
+    }
+
+    private static Counter eventCounter(MeterRegistry meterRegistry, AuditCategory category, String result) {
+        return Counter.builder("audit.events")
+                .description("Security audit events by what happened to them")
+                .tag("category", category.name().toLowerCase(Locale.ROOT))
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void startWriter() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::drainLoop, "security-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    void stopWriter() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Whether an event of this category should be recorded. Callers check this first so
+     * that events which are sampled out are never built.
+     */
+    public boolean isSampled(AuditCategory category) {
+        if (!enabled) {
+            return false;
+        }
+        double rate = sampleRates.get(category);
+        if (rate >= 1.0 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate)) {
+            return true;
+        }
+        sampledOut.get(category).increment();
+        return false;
+    }
+
+    /**
+     * Queues a sampled event for writing; never blocks
+     *
+     * @return false if the buffer was full and the event was dropped
+     */
+    public boolean record(AuditEvent event) {
+        if (buffer.offer(event)) {
+            recorded.get(event.category()).increment();
+            return true;
+        }
+        dropped.get(event.category()).increment();
+        return false;
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(idleParkNanos);
+            }
+        }
+        // Flush what was accepted before shutdown
+        drain();
+    }
+
+    private int drain() {
+        int written = 0;
+        AuditEvent event;
+        while ((event = buffer.poll()) != null) {
+            write(event);
+            written++;
+        }
+        return written;
+    }
+
+    private void write(AuditEvent event) {
+        try {
+            auditLog.info(objectMapper.writeValueAsString(event));
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Could not write audit event {}: {}", event.category(), e.getMessage());
+        }
+    }
+}
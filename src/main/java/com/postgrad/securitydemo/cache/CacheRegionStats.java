@@ -0,0 +1,13 @@
+package com.postgrad.securitydemo.cache;
+
+/**
+ * Point-in-time statistics of one named cache.
+ *
+ * @param hitCount Lookups answered from the cache
+ * @param missCount Lookups that had to load
+ * @param hitRate hitCount / (hitCount + missCount), or 1.0 if there were no lookups
+ * @param evictionCount Entries removed because of the size bound or expiry
+ * @param size Approximate number of entries currently cached
+ */
+public record CacheRegionStats(long hitCount, long missCount, double hitRate, long evictionCount, long size) {
+}
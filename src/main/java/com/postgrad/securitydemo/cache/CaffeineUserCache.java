@@ -0,0 +1,220 @@
+package com.postgrad.securitydemo.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * UserCache backed by Caffeine.
+ *
+ * Entries are bounded by count (W-TinyLFU eviction) and expire a fixed time after being
+ * written, unless they were put with their own time to live. In soft-values mode the
+ * garbage collector may additionally reclaim entries under memory pressure.
+ *
+ * Loads through {@link #get(String, Function)} are coalesced per user ID, and failed loads are
+ * negatively cached for a short time so a missing user does not cause a request storm. An
+ * invalidation that arrives while a load is running also discards that load's result.
+ */
+public class CaffeineUserCache implements UserCache {
+
+    private final Cache<String, UserRepresentation> cache;
+
+    // Per-entry expiry, for entries restored with the time they had left
+    private final Policy.VarExpiration<String, UserRepresentation> expiration;
+
+    // User IDs whose last load found nothing or failed
+    private final Cache<String, Boolean> failedLoads;
+
+    // Loads in progress, shared by all callers missing on the same user ID
+    private final Map<String, Load> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param maximumSize Maximum number of cached users
+     * @param expireAfterWrite How long an entry stays valid after it was written
+     * @param softValues Whether values are held through soft references
+     * @param negativeTtl How long a failed load is remembered
+     */
+    public CaffeineUserCache(long maximumSize, Duration expireAfterWrite, boolean softValues, Duration negativeTtl) {
+        this(maximumSize, expireAfterWrite, softValues, negativeTtl, Ticker.systemTicker());
+    }
+
+    /**
+     * @param maximumSize Maximum number of cached users
+     * @param expireAfterWrite How long an entry stays valid after it was written
+     * @param softValues Whether values are held through soft references
+     * @param negativeTtl How long a failed load is remembered
+     * @param ticker Time source for both expiries
+     */
+    public CaffeineUserCache(long maximumSize, Duration expireAfterWrite, boolean softValues, Duration negativeTtl,
+                             Ticker ticker) {
+        long expireAfterWriteNanos = expireAfterWrite.toNanos();
+        Caffeine<String, UserRepresentation> builder = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .ticker(ticker)
+                .expireAfter(new Expiry<String, UserRepresentation>() {
+                    @Override
+                    public long expireAfterCreate(String userId, UserRepresentation user, long currentTime) {
+                        return expireAfterWriteNanos;
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String userId, UserRepresentation user, long currentTime,
+                                                  long currentDuration) {
+                        return expireAfterWriteNanos;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String userId, UserRepresentation user, long currentTime,
+                                                long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats();
+        if (softValues) {
+            builder.softValues();
+        }
+        this.cache = builder.build();
+        this.expiration = cache.policy().expireVariably().orElseThrow();
+        this.failedLoads = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .ticker(ticker)
+                .expireAfterWrite(negativeTtl)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public UserRepresentation get(String userId) {
+        return cache.getIfPresent(userId);
+    }
+
+    @Override
+    public UserRepresentation get(String userId, Function<String, UserRepresentation> loader) {
+        UserRepresentation cached = cache.getIfPresent(userId);
+        if (cached != null || failedLoads.getIfPresent(userId) != null) {
+            return cached;
+        }
+
+        Load load = new Load();
+        Load existing = inFlight.putIfAbsent(userId, load);
+        if (existing != null) {
+            return join(existing.result);
+        }
+
+        try {
+            // Another load may have finished between our miss and claiming the slot
+            UserRepresentation loaded = cache.asMap().get(userId);
+            if (loaded == null) {
+                loaded = loader.apply(userId);
+                if (loaded != null) {
+                    cache.put(userId, loaded);
+                } else {
+                    failedLoads.put(userId, Boolean.TRUE);
+                }
+                // Invalidation marks the load before clearing, so either it removes what we
+                // stored or we see the mark here and remove it ourselves
+                if (load.invalidated) {
+                    cache.invalidate(userId);
+                    failedLoads.invalidate(userId);
+                }
+            }
+            load.result.complete(loaded);
+            return loaded;
+        } catch (RuntimeException e) {
+            failedLoads.put(userId, Boolean.TRUE);
+            if (load.invalidated) {
+                failedLoads.invalidate(userId);
+            }
+            load.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(userId, load);
+        }
+    }
+
+    @Override
+    public boolean contains(String userId) {
+        return cache.asMap().containsKey(userId);
+    }
+
+    @Override
+    public void put(String userId, UserRepresentation user) {
+        cache.put(userId, user);
+        failedLoads.invalidate(userId);
+    }
+
+    @Override
+    public void put(String userId, UserRepresentation user, Duration timeToLive) {
+        expiration.put(userId, user, timeToLive);
+        failedLoads.invalidate(userId);
+    }
+
+    @Override
+    public void invalidate(String userId) {
+        Load load = inFlight.get(userId);
+        if (load != null) {
+            load.invalidated = true;
+        }
+        cache.invalidate(userId);
+        failedLoads.invalidate(userId);
+    }
+
+    @Override
+    public void invalidateAll() {
+        inFlight.values().forEach(load -> load.invalidated = true);
+        cache.invalidateAll();
+        failedLoads.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    @Override
+    public void forEach(Consumer<UserCacheEntry> consumer) {
+        cache.asMap().forEach((userId, user) -> expiration.getExpiresAfter(userId)
+                .ifPresent(timeToLive -> consumer.accept(new UserCacheEntry(userId, user, timeToLive))));
+    }
+
+    @Override
+    public UserCacheStats stats() {
+        CacheStats stats = cache.stats();
+        return new UserCacheStats(stats.hitCount(), stats.missCount(), stats.hitRate(),
+                stats.evictionCount(), cache.estimatedSize(), failedLoads.stats().hitCount());
+    }
+
+    private static UserRepresentation join(CompletableFuture<UserRepresentation> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A load in progress. An invalidation arriving meanwhile marks it, so that the value read
+     * before the invalidation is not kept.
+     */
+    private static final class Load {
+
+        private final CompletableFuture<UserRepresentation> result = new CompletableFuture<>();
+
+        private volatile boolean invalidated;
+    }
+}
@@ -0,0 +1,169 @@
+package com.postgrad.securitydemo.cache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.postgrad.securitydemo.dto.CursorPage;
+import com.postgrad.securitydemo.dto.ResourceSummary;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Read-through cache for the public and per-owner resource listings.
+ *
+ * Pages are cached per (cursor, page size), and per owner for the owner listing. Cached pages
+ * hold immutable projections, never managed entities.
+ *
+ * Writes evict precisely: the public listing is only dropped when a public resource (before or
+ * after the change) was touched, and the owner listing only for the owners involved. Inside a
+ * transaction the eviction waits for the commit, so readers cannot reload the old rows between
+ * the eviction and the change becoming visible.
+ *
+ * A reader that was already loading when the eviction ran may still have read the old rows.
+ * Every eviction bumps a generation counter, and a page whose load overlapped an eviction is
+ * dropped again instead of being served until it expires.
+ */
+@Slf4j
+public class ResourceReadCache {
+
+    public static final String PUBLIC_RESOURCES = "publicResources";
+    public static final String OWNER_RESOURCES = "ownerResources";
+
+    private final Cache publicPages;
+    private final Cache ownerPages;
+
+    // Incremented before every eviction
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @param cacheManager Cache manager providing the publicResources and ownerResources caches
+     */
+    public ResourceReadCache(CacheManager cacheManager) {
+        this.publicPages = requireCache(cacheManager, PUBLIC_RESOURCES);
+        this.ownerPages = requireCache(cacheManager, OWNER_RESOURCES);
+    }
+
+    /**
+     * Get a page of the public listing, loading it on a miss
+     */
+    public CursorPage<ResourceSummary> publicPage(Long after, int limit, Supplier<CursorPage<ResourceSummary>> loader) {
+        return load(publicPages, new PageKey(null, after, limit), loader);
+    }
+
+    /**
+     * Get a page of an owner's listing, loading it on a miss
+     */
+    public CursorPage<ResourceSummary> ownerPage(String owner, Long after, int limit, Supplier<CursorPage<ResourceSummary>> loader) {
+        return load(ownerPages, new PageKey(owner, after, limit), loader);
+    }
+
+    /**
+     * Evict the listings affected by a write to resources of a single owner
+     *
+     * @see #evict(boolean, Collection)
+     */
+    public void evict(boolean publicAffected, String owner) {
+        evict(publicAffected, owner != null ? Set.of(owner) : Set.of());
+    }
+
+    /**
+     * Evict the listings affected by a write, after the surrounding transaction commits
+     * (immediately when there is none)
+     *
+     * @param publicAffected Whether a public resource was created, changed or deleted, or a resource
+     *                       became public or stopped being public
+     * @param owners Owners of the resources that were written
+     */
+    public void evict(boolean publicAffected, Collection<String> owners) {
+        if (!publicAffected && owners.isEmpty()) {
+            return;
+        }
+        Set<String> affectedOwners = owners.stream().filter(Objects::nonNull).collect(Collectors.toUnmodifiableSet());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evictNow(publicAffected, affectedOwners);
+                }
+            });
+        } else {
+            evictNow(publicAffected, affectedOwners);
+        }
+    }
+
+    /**
+     * Drop every cached listing
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        publicPages.clear();
+        ownerPages.clear();
+    }
+
+    /**
+     * @return Hit/miss counters per cache, keyed by cache name
+     */
+    public Map<String, CacheRegionStats> stats() {
+        Map<String, CacheRegionStats> stats = new LinkedHashMap<>();
+        stats.put(PUBLIC_RESOURCES, statsOf(publicPages));
+        stats.put(OWNER_RESOURCES, statsOf(ownerPages));
+        return stats;
+    }
+
+    private CursorPage<ResourceSummary> load(Cache cache, PageKey key, Supplier<CursorPage<ResourceSummary>> loader) {
+        long seen = generation.get();
+        CursorPage<ResourceSummary> page = cache.get(key, loader::get);
+        if (generation.get() != seen) {
+            // The page may have been read before a write that was evicted meanwhile
+            cache.evict(key);
+        }
+        return page;
+    }
+
+    private void evictNow(boolean publicAffected, Set<String> owners) {
+        generation.incrementAndGet();
+        if (publicAffected) {
+            publicPages.clear();
+        }
+        if (!owners.isEmpty()) {
+            nativeCache(ownerPages).asMap().keySet().removeIf(key -> owners.contains(((PageKey) key).owner()));
+        }
+        log.debug("Evicted resource listings (public: {}, owners: {})", publicAffected, owners);
+    }
+
+    private static CacheRegionStats statsOf(Cache cache) {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = nativeCache(cache);
+        CacheStats stats = nativeCache.stats();
+        return new CacheRegionStats(stats.hitCount(), stats.missCount(), stats.hitRate(),
+                stats.evictionCount(), nativeCache.estimatedSize());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache(Cache cache) {
+        return (com.github.benmanes.caffeine.cache.Cache<Object, Object>) cache.getNativeCache();
+    }
+
+    private static Cache requireCache(CacheManager cacheManager, String name) {
+        Cache cache = cacheManager.getCache(name);
+        if (cache == null || !(cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache)) {
+            throw new IllegalStateException("Expected a Caffeine cache named " + name);
+        }
+        return cache;
+    }
+
+    /**
+     * @param owner Owner of the listing, or null for the public listing
+     */
+    private record PageKey(String owner, Long after, int limit) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.postgrad.securitydemo.cache;
+
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Cache of Keycloak user representations, keyed by user ID.
+ *
+ * Implementations decide on bounds and expiry; callers only see present or absent entries.
+ */
+public interface UserCache {
+
+    /**
+     * @return The cached user, or null if absent or expired
+     */
+    UserRepresentation get(String userId);
+
+    /**
+     * Returns the cached user, loading it on a miss. Concurrent misses for the same user share
+     * one call to the loader. A load that yields null (or fails) is remembered for a short
+     * time, during which further lookups return null without calling the loader.
+     *
+     * @param userId The user to look up
+     * @param loader Loads the user from the source of truth, returning null if not found
+     * @return The user, or null if it does not exist or could not be loaded
+     */
+    UserRepresentation get(String userId, Function<String, UserRepresentation> loader);
+
+    /**
+     * @return Whether the user is cached and not expired; unlike {@link #get(String)}, not counted as a lookup
+     */
+    boolean contains(String userId);
+
+    void put(String userId, UserRepresentation user);
+
+    /**
+     * Caches a user for the given time instead of the configured expiry, e.g. when restoring
+     * an entry that was cached before a restart
+     */
+    void put(String userId, UserRepresentation user, Duration timeToLive);
+
+    void invalidate(String userId);
+
+    void invalidateAll();
+
+    /**
+     * @return Approximate number of cached users
+     */
+    long size();
+
+    /**
+     * Hands every live entry to the consumer; entries changing meanwhile may or may not be seen
+     */
+    void forEach(Consumer<UserCacheEntry> consumer);
+
+    UserCacheStats stats();
+}
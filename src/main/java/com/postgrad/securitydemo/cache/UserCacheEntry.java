@@ -0,0 +1,15 @@
+package com.postgrad.securitydemo.cache;
+
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.time.Duration;
+
+/**
+ * A cached user together with the time it has left before it expires.
+ *
+ * @param userId The user's ID
+ * @param user The cached representation
+ * @param timeToLive Remaining time until the entry expires
+ */
+public record UserCacheEntry(String userId, UserRepresentation user, Duration timeToLive) {
+}
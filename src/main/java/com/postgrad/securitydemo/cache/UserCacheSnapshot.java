@@ -0,0 +1,287 @@
+package com.postgrad.securitydemo.cache;
+
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot of a {@link UserCache}, so that a restarted instance starts warm.
+ *
+ * The file holds the instant it was written and, per cached user, the instant its entry expires and the user fields the
+ * application exposes (ID, username, email, first and last name, enabled and email-verified
+ * flags, creation time and attributes), as length-prefixed UTF-8 strings and fixed-width
+ * numbers behind a magic number and format version, followed by a CRC32 of everything before
+ * it. It is written to a temporary file that then replaces the previous snapshot, so a crash
+ * mid-write leaves the old snapshot in place; it is read through a memory mapping without
+ * copying the file onto the heap first. Entries that expired while the instance was down are
+ * skipped, and the others keep the time they had left.
+ *
+ * Any problem with the file (missing, truncated, foreign or corrupted) means the snapshot is
+ * ignored and the cache starts empty, as it would without snapshots.
+ */
+public final class UserCacheSnapshot {
+
+    private static final int MAGIC = 0x55435331; // "UCS1"
+    private static final int VERSION = 2;
+
+    // Magic, version and write time
+    private static final int HEADER_LENGTH = 4 + 4 + 8;
+
+    private static final byte ENTRY = 1;
+    private static final byte END = 0;
+
+    private static final byte NULL_BOOLEAN = 2;
+
+    private final Path path;
+    private final Clock clock;
+
+    public UserCacheSnapshot(Path path) {
+        this(path, Clock.systemUTC());
+    }
+
+    UserCacheSnapshot(Path path, Clock clock) {
+        this.path = path;
+        this.clock = clock;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * Writes every live entry of the cache, replacing the previous snapshot
+     *
+     * @return Number of users written
+     */
+    public int write(UserCache cache) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            int count;
+            CRC32 checksum = new CRC32();
+            try (OutputStream file = Files.newOutputStream(temporary)) {
+                DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(file), checksum));
+                long now = clock.millis();
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(now);
+                count = writeEntries(out, cache, now);
+                out.writeByte(END);
+                out.flush();
+                // The checksum covers everything above and is not part of itself
+                DataOutputStream trailer = new DataOutputStream(file);
+                trailer.writeLong(checksum.getValue());
+                trailer.flush();
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static int writeEntries(DataOutputStream out, UserCache cache, long now) throws IOException {
+        int[] count = new int[1];
+        IOException[] failure = new IOException[1];
+        cache.forEach(entry -> {
+            if (failure[0] != null) {
+                return;
+            }
+            try {
+                out.writeByte(ENTRY);
+                out.writeLong(now + entry.timeToLive().toMillis());
+                writeUser(out, entry.user());
+                count[0]++;
+            } catch (IOException e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return count[0];
+    }
+
+    /**
+     * @return When the snapshot was written, or null if there is none
+     * @throws IOException If the file exists but cannot be read or is not a valid snapshot
+     */
+    public Instant writtenAt() throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            checkHeader(header.flip(), path);
+            return Instant.ofEpochMilli(header.getLong(8));
+        }
+    }
+
+    /**
+     * Reads the snapshot, if there is a usable one
+     *
+     * @param consumer Receives each entry that has not expired, with the time it has left
+     * @return Number of entries handed to the consumer
+     * @throws IOException If the file exists but cannot be read or is not a valid snapshot
+     */
+    public int read(Consumer<UserCacheEntry> consumer) throws IOException {
+        if (!Files.isRegularFile(path)) {
+            return 0;
+        }
+        List<UserCacheEntry> entries = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            checkHeader(buffer, path);
+            if (buffer.limit() < HEADER_LENGTH + 1 + 8) {
+                throw new IOException("User cache snapshot is truncated: " + path);
+            }
+            int contentLength = buffer.limit() - 8;
+            CRC32 checksum = new CRC32();
+            checksum.update(buffer.duplicate().limit(contentLength));
+            if (checksum.getValue() != buffer.getLong(contentLength)) {
+                throw new IOException("User cache snapshot is corrupted: " + path);
+            }
+
+            long now = clock.millis();
+            buffer.position(HEADER_LENGTH).limit(contentLength);
+            // Only hand out entries once the whole file has been read successfully
+            while (buffer.get() == ENTRY) {
+                long remaining = buffer.getLong() - now;
+                UserRepresentation user = readUser(buffer);
+                if (remaining > 0) {
+                    entries.add(new UserCacheEntry(user.getId(), user, Duration.ofMillis(remaining)));
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("User cache snapshot is truncated: " + path, e);
+        }
+        entries.forEach(consumer);
+        return entries.size();
+    }
+
+    private static void checkHeader(ByteBuffer buffer, Path path) throws IOException {
+        if (buffer.limit() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a user cache snapshot: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported user cache snapshot version " + buffer.getInt(4) + ": " + path);
+        }
+    }
+
+    private static void writeUser(DataOutputStream out, UserRepresentation user) throws IOException {
+        writeString(out, user.getId());
+        writeString(out, user.getUsername());
+        writeString(out, user.getEmail());
+        writeString(out, user.getFirstName());
+        writeString(out, user.getLastName());
+        writeBoolean(out, user.isEnabled());
+        writeBoolean(out, user.isEmailVerified());
+        out.writeBoolean(user.getCreatedTimestamp() != null);
+        if (user.getCreatedTimestamp() != null) {
+            out.writeLong(user.getCreatedTimestamp());
+        }
+        Map<String, List<String>> attributes = user.getAttributes();
+        out.writeInt(attributes == null ? -1 : attributes.size());
+        if (attributes != null) {
+            for (Map.Entry<String, List<String>> attribute : attributes.entrySet()) {
+                writeString(out, attribute.getKey());
+                List<String> values = attribute.getValue();
+                out.writeInt(values == null ? -1 : values.size());
+                if (values != null) {
+                    for (String value : values) {
+                        writeString(out, value);
+                    }
+                }
+            }
+        }
+    }
+
+    private static UserRepresentation readUser(ByteBuffer buffer) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(readString(buffer));
+        user.setUsername(readString(buffer));
+        user.setEmail(readString(buffer));
+        user.setFirstName(readString(buffer));
+        user.setLastName(readString(buffer));
+        user.setEnabled(readBoolean(buffer));
+        user.setEmailVerified(readBoolean(buffer));
+        if (buffer.get() != 0) {
+            user.setCreatedTimestamp(buffer.getLong());
+        }
+        int attributeCount = buffer.getInt();
+        if (attributeCount >= 0) {
+            Map<String, List<String>> attributes = new LinkedHashMap<>();
+            for (int i = 0; i < attributeCount; i++) {
+                String name = readString(buffer);
+                int valueCount = buffer.getInt();
+                List<String> values = null;
+                if (valueCount >= 0) {
+                    values = new ArrayList<>(valueCount);
+                    for (int j = 0; j < valueCount; j++) {
+                        values.add(readString(buffer));
+                    }
+                }
+                attributes.put(name, values);
+            }
+            user.setAttributes(attributes);
+        }
+        return user;
+    }
+
+    // Strings are an int byte length (-1 for null) followed by UTF-8 bytes
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeBoolean(DataOutputStream out, Boolean value) throws IOException {
+        out.writeByte(value == null ? NULL_BOOLEAN : value ? 1 : 0);
+    }
+
+    private static Boolean readBoolean(ByteBuffer buffer) {
+        byte value = buffer.get();
+        return value == NULL_BOOLEAN ? null : value == 1;
+    }
+}
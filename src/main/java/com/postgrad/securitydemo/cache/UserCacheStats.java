@@ -0,0 +1,15 @@
+package com.postgrad.securitydemo.cache;
+
+/**
+ * Point-in-time statistics of a {@link UserCache}.
+ *
+ * @param hitCount Lookups answered from the cache
+ * @param missCount Lookups that found no usable entry
+ * @param hitRate hitCount divided by all lookups, 1.0 when there were none
+ * @param evictionCount Entries removed because of size bounds, expiry or memory pressure
+ * @param size Approximate number of cached users
+ * @param negativeHitCount Lookups answered from the negative cache (recently failed loads)
+ */
+public record UserCacheStats(long hitCount, long missCount, double hitRate, long evictionCount, long size,
+                             long negativeHitCount) {
+}
@@ -0,0 +1,85 @@
+package com.postgrad.securitydemo.cluster;
+
+import com.postgrad.securitydemo.model.ClusterLease;
+import com.postgrad.securitydemo.repository.ClusterLeaseRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Time-bounded leases stored in the shared database, used for leader election.
+ *
+ * Taking a lease is one conditional UPDATE that succeeds if the lease is free, expired or
+ * already ours, so the database serializes competing nodes. The holder renews by taking it
+ * again before it expires; a node that dies simply stops renewing and another node takes
+ * over once the lease has expired. Nodes release their leases on shutdown so that failover
+ * does not have to wait for the expiry. Expiry uses the nodes' wall clocks, which are assumed
+ * to be synchronized to well within the lease duration.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class ClusterLeases {
+
+    private final ClusterLeaseRepository leaseRepository;
+    private final ClusterNode node;
+    private final Clock clock = Clock.systemUTC();
+
+    // Leases this node has taken, released on shutdown
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Takes or renews a lease
+     *
+     * @param name Lease name, e.g. "user-sync"
+     * @param duration How long the lease stays ours without renewal
+     * @return Whether this node holds the lease now
+     */
+    public boolean tryAcquire(String name, Duration duration) {
+        Instant now = clock.instant();
+        int updated = leaseRepository.tryTake(name, node.id(), now, now.plus(duration));
+        if (updated == 0 && !leaseRepository.existsById(name)) {
+            try {
+                leaseRepository.saveAndFlush(ClusterLease.unowned(name));
+            } catch (DataIntegrityViolationException e) {
+                // Another node created it first; compete for it below like for any other lease
+            }
+            updated = leaseRepository.tryTake(name, node.id(), now, now.plus(duration));
+        }
+        if (updated == 0) {
+            held.remove(name);
+            return false;
+        }
+        if (held.add(name)) {
+            log.info("Node {} took lease '{}'", node.id(), name);
+        }
+        return true;
+    }
+
+    /**
+     * Gives a lease up if this node holds it
+     */
+    public void release(String name) {
+        held.remove(name);
+        leaseRepository.release(name, node.id());
+    }
+
+    @PreDestroy
+    void releaseAll() {
+        for (String name : Set.copyOf(held)) {
+            try {
+                release(name);
+            } catch (RuntimeException e) {
+                log.warn("Could not release lease '{}': {}", name, e.getMessage());
+            }
+        }
+    }
+}
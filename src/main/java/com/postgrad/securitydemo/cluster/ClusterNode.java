@@ -0,0 +1,39 @@
+package com.postgrad.securitydemo.cluster;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+
+/**
+ * Identity of this application instance among the nodes sharing the database.
+ *
+ * Taken from cluster.node-id if set, otherwise the host name plus a random suffix, so that
+ * several instances on one host (or several application contexts in one JVM) stay distinct.
+ */
+@Component
+@Slf4j
+public class ClusterNode {
+
+    private final String id;
+
+    public ClusterNode(@Value("${cluster.node-id:}") String configuredId) {
+        this.id = configuredId.isBlank() ? hostName() + "-" + UUID.randomUUID().toString().substring(0, 8) : configuredId;
+        log.info("Cluster node ID is {}", id);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "node";
+        }
+    }
+}
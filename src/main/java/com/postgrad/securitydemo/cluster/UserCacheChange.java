@@ -0,0 +1,14 @@
+package com.postgrad.securitydemo.cluster;
+
+import com.postgrad.securitydemo.model.UserCacheInvalidation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+/**
+ * A user cache change made by another node, to be applied locally.
+ *
+ * @param kind What changed
+ * @param userId The user concerned; null for INVALIDATE_ALL
+ * @param user The new user representation, for UPDATE only
+ */
+public record UserCacheChange(UserCacheInvalidation.Kind kind, String userId, UserRepresentation user) {
+}
@@ -0,0 +1,200 @@
+package com.postgrad.securitydemo.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.postgrad.securitydemo.model.UserCacheInvalidation;
+import com.postgrad.securitydemo.model.UserCacheInvalidation.Kind;
+import com.postgrad.securitydemo.repository.UserCacheInvalidationRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Cluster-wide user cache invalidation log, kept in the application's own database.
+ *
+ * A node that changes its user cache in a way the others must follow appends an entry; every
+ * node polls for entries written by the others and applies them to its own cache. Entries are
+ * polled by ID above a high-water mark. Because IDs are allocated before the inserting
+ * transaction commits, an entry with a lower ID can become visible after one with a higher ID;
+ * the mark therefore only moves past entries older than a grace period, and entries above it
+ * that were already applied are remembered so they are not applied twice. Own entries are
+ * skipped, as the writing node has already applied them.
+ *
+ * Entries are purged once they are older than the retention period. A node that starts up
+ * begins at the current end of the log. If it restores its cache from a snapshot, it first
+ * goes back to the entries written since the snapshot was taken (see {@link #replaySince}),
+ * so that changes published while it was down are applied on top of the restored entries.
+ */
+@Component
+@Slf4j
+public class UserCacheInvalidationLog {
+
+    private static final int PAGE_SIZE = 500;
+
+    private final UserCacheInvalidationRepository repository;
+    private final ClusterNode node;
+    private final ObjectMapper objectMapper;
+    private final Duration grace;
+    private final Duration retention;
+    private final Clock clock = Clock.systemUTC();
+
+    // Every entry at or below the mark has been seen
+    private long highWaterMark;
+
+    // Entries above the mark that were already applied
+    private final NavigableSet<Long> applied = new TreeSet<>();
+
+    public UserCacheInvalidationLog(
+            UserCacheInvalidationRepository repository,
+            ClusterNode node,
+            ObjectMapper objectMapper,
+            @Value("${cluster.invalidation.grace:PT10S}") Duration grace,
+            @Value("${cluster.invalidation.retention:PT6H}") Duration retention) {
+        this.repository = repository;
+        this.node = node;
+        this.objectMapper = objectMapper;
+        this.grace = grace;
+        this.retention = retention;
+    }
+
+    @PostConstruct
+    synchronized void startAtEnd() {
+        highWaterMark = repository.findMaxId();
+    }
+
+    /**
+     * Moves the high-water mark back so that the next poll applies every entry written since
+     * the given instant, e.g. when the snapshot a node restored its cache from was taken.
+     *
+     * @return false if entries from that time may already have been purged, in which case
+     *         the mark is left alone and a cache restored from that time cannot be brought up to date
+     */
+    public synchronized boolean replaySince(Instant since) {
+        // Entries may commit up to the grace period after they were created
+        Instant from = since.minus(grace);
+        if (from.isBefore(clock.instant().minus(retention))) {
+            return false;
+        }
+        highWaterMark = repository.findMaxIdCreatedBefore(from);
+        applied.clear();
+        return true;
+    }
+
+    /**
+     * Tells the other nodes to drop one user from their caches
+     */
+    public void publishInvalidate(String userId) {
+        repository.save(entry(Kind.INVALIDATE, userId, null));
+    }
+
+    /**
+     * Tells the other nodes to drop every cached user
+     */
+    public void publishInvalidateAll() {
+        repository.save(entry(Kind.INVALIDATE_ALL, null, null));
+    }
+
+    /**
+     * Hands changed users to the other nodes, so they need not fetch them from Keycloak
+     */
+    public void publishUpdates(Map<String, UserRepresentation> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        List<UserCacheInvalidation> entries = new ArrayList<>(users.size());
+        users.forEach((userId, user) -> entries.add(entry(Kind.UPDATE, userId, toJson(user))));
+        repository.saveAll(entries);
+    }
+
+    /**
+     * Tells the other nodes that users no longer exist
+     */
+    public void publishRemovals(Collection<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        List<UserCacheInvalidation> entries = new ArrayList<>(userIds.size());
+        userIds.forEach(userId -> entries.add(entry(Kind.REMOVE, userId, null)));
+        repository.saveAll(entries);
+    }
+
+    /**
+     * Applies the entries other nodes wrote since the last poll
+     *
+     * @param consumer Applies one change to the local cache
+     * @return Number of changes applied
+     */
+    public synchronized int poll(Consumer<UserCacheChange> consumer) {
+        Instant settled = clock.instant().minus(grace);
+        boolean advancing = true;
+        long cursor = highWaterMark;
+        int changes = 0;
+        List<UserCacheInvalidation> page;
+        do {
+            page = repository.findByIdGreaterThanOrderByIdAsc(cursor, Limit.of(PAGE_SIZE));
+            for (UserCacheInvalidation entry : page) {
+                if (applied.add(entry.getId()) && !node.id().equals(entry.getOrigin())) {
+                    consumer.accept(toChange(entry));
+                    changes++;
+                }
+                // Later entries may still be joined by ones whose transactions commit late
+                advancing &= entry.getCreatedAt().isBefore(settled);
+                if (advancing) {
+                    highWaterMark = entry.getId();
+                }
+                cursor = entry.getId();
+            }
+        } while (page.size() == PAGE_SIZE);
+        applied.headSet(highWaterMark, true).clear();
+        return changes;
+    }
+
+    /**
+     * Deletes entries older than the retention period
+     *
+     * @return Number of entries deleted
+     */
+    public int purgeExpired() {
+        return repository.deleteCreatedBefore(clock.instant().minus(retention));
+    }
+
+    private UserCacheInvalidation entry(Kind kind, String userId, String payload) {
+        return new UserCacheInvalidation(node.id(), kind, userId, payload, clock.instant());
+    }
+
+    private String toJson(UserRepresentation user) {
+        try {
+            return objectMapper.writeValueAsString(user);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialize user " + user.getId(), e);
+        }
+    }
+
+    private UserCacheChange toChange(UserCacheInvalidation entry) {
+        if (entry.getKind() != Kind.UPDATE) {
+            return new UserCacheChange(entry.getKind(), entry.getUserId(), null);
+        }
+        try {
+            return new UserCacheChange(Kind.UPDATE, entry.getUserId(),
+                    objectMapper.readValue(entry.getPayload(), UserRepresentation.class));
+        } catch (JsonProcessingException e) {
+            // Still keep the other node's view: drop ours and reload on next use
+            log.warn("Could not read user {} from invalidation entry {}: {}", entry.getUserId(), entry.getId(), e.getMessage());
+            return new UserCacheChange(Kind.INVALIDATE, entry.getUserId(), null);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.postgrad.securitydemo.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.postgrad.securitydemo.cache.CaffeineUserCache;
+import com.postgrad.securitydemo.cache.ResourceReadCache;
+import com.postgrad.securitydemo.cache.UserCache;
+import com.postgrad.securitydemo.cache.UserCacheSnapshot;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Configuration class for application caches.
+ *
+ * The user cache holds Keycloak user representations. It is bounded so that heap use stays
+ * flat regardless of realm size, and entries expire so that stale user data is re-read from
+ * Keycloak eventually. It is saved to a snapshot file so that restarts begin with the users
+ * cached before.
+ *
+ * The resource caches hold pages of the public and per-owner resource listings. They are
+ * plain Spring caches backed by Caffeine, bounded by entry count and evicted by the service
+ * on every write that affects them.
+ *
+ * All caches report hits, misses, evictions and size as Micrometer cache.* meters: the
+ * resource caches through Spring Boot's cache metrics, the user cache through
+ * {@link #userCacheMetrics(UserCache)}.
+ */
+@Configuration
+public class CacheConfig {
+
+    /**
+     * Creates the cache of Keycloak users used by KeycloakUserService.
+     *
+     * @param maximumSize Maximum number of cached users
+     * @param expireAfterWrite How long a cached user stays valid
+     * @param softValues Whether cached users may be reclaimed under memory pressure
+     * @param negativeTtl How long a user that could not be loaded is remembered as missing
+     * @return The user cache
+     */
+    @Bean
+    public UserCache userCache(
+            @Value("${keycloak.user-cache.maximum-size:10000}") long maximumSize,
+            @Value("${keycloak.user-cache.expire-after-write:PT1H}") Duration expireAfterWrite,
+            @Value("${keycloak.user-cache.soft-values:false}") boolean softValues,
+            @Value("${keycloak.user-cache.negative-ttl:PT30S}") Duration negativeTtl) {
+        return new CaffeineUserCache(maximumSize, expireAfterWrite, softValues, negativeTtl);
+    }
+
+    /**
+     * Creates the snapshot file KeycloakUserService saves the user cache to and restores it from.
+     *
+     * @param path Snapshot file; point it at storage that survives restarts
+     * @return The user cache snapshot
+     */
+    @Bean
+    public UserCacheSnapshot userCacheSnapshot(
+            @Value("${keycloak.user-cache.snapshot.path:data/user-cache.snapshot}") String path) {
+        return new UserCacheSnapshot(Path.of(path));
+    }
+
+    /**
+     * Publishes the user cache statistics under the same meter names Micrometer uses for
+     * Spring caches (cache.gets, cache.evictions, cache.size), tagged cache=userCache.
+     * Lookups answered by the negative cache count as cache.gets with result=negative-hit.
+     *
+     * @param userCache The user cache to observe
+     * @return The binder registering the user cache meters
+     */
+    @Bean
+    public MeterBinder userCacheMetrics(UserCache userCache) {
+        return registry -> {
+            Tags tags = Tags.of("cache", "userCache");
+            String getsDescription = "The number of times cache lookup methods have returned a cached (hit), "
+                    + "uncached (miss) or known-missing (negative-hit) value.";
+            FunctionCounter.builder("cache.gets", userCache, cache -> cache.stats().hitCount())
+                    .tags(tags).tag("result", "hit")
+                    .description(getsDescription)
+                    .register(registry);
+            FunctionCounter.builder("cache.gets", userCache, cache -> cache.stats().missCount())
+                    .tags(tags).tag("result", "miss")
+                    .description(getsDescription)
+                    .register(registry);
+            FunctionCounter.builder("cache.gets", userCache, cache -> cache.stats().negativeHitCount())
+                    .tags(tags).tag("result", "negative-hit")
+                    .description(getsDescription)
+                    .register(registry);
+            FunctionCounter.builder("cache.evictions", userCache, cache -> cache.stats().evictionCount())
+                    .tags(tags)
+                    .description("The number of times the cache was evicted.")
+                    .register(registry);
+            Gauge.builder("cache.size", userCache, UserCache::size)
+                    .tags(tags)
+                    .description("The number of entries in this cache.")
+                    .register(registry);
+        };
+    }
+
+    /**
+     * Creates the cache manager for the resource listing caches.
+     *
+     * @param maximumSize Maximum number of cached pages per cache
+     * @param expireAfterWrite Upper bound on how long a page is served from memory
+     * @return The cache manager
+     */
+    @Bean
+    public CacheManager resourceCacheManager(
+            @Value("${resources.cache.maximum-size:1000}") long maximumSize,
+            @Value("${resources.cache.expire-after-write:PT10M}") Duration expireAfterWrite) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats());
+        cacheManager.setAllowNullValues(false);
+        cacheManager.setCacheNames(List.of(ResourceReadCache.PUBLIC_RESOURCES, ResourceReadCache.OWNER_RESOURCES));
+        return cacheManager;
+    }
+
+    /**
+     * Creates the read-through cache used by ResourceService for listings.
+     *
+     * @param resourceCacheManager Cache manager holding the listing caches
+     * @return The resource listing cache
+     */
+    @Bean
+    public ResourceReadCache resourceReadCache(CacheManager resourceCacheManager) {
+        return new ResourceReadCache(resourceCacheManager);
+    }
+}
@@ -0,0 +1,161 @@
+package com.postgrad.securitydemo.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JwtDecoder that remembers tokens it has already verified.
+ *
+ * Decoding a bearer token means a Base64 decode, a JSON parse and an RSA signature check.
+ * Single-page applications replay the same token on every request until it expires, so
+ * this decoder keeps the verified Jwt keyed by a SHA-256 hash of the raw token and returns
+ * it directly on repeat requests.
+ *
+ * This decoder:
+ * - Delegates the first decode of a token to the wrapped decoder (signature and claim validation)
+ * - Keeps successfully decoded tokens until their "exp" instant, never longer
+ * - Never caches tokens without an expiry, or failures
+ * - Holds at most maxEntries tokens, dropping expired entries first when full
+ * - Counts hits and misses so the saved work can be observed
+ */
+@Slf4j
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private final JwtDecoder delegate;
+    private final int maxEntries;
+    private final Clock clock;
+
+    private final Map<String, Jwt> cache = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a caching decoder using the system clock.
+     *
+     * @param delegate The decoder that performs the actual verification
+     * @param maxEntries Maximum number of verified tokens kept in memory
+     */
+    public CachingJwtDecoder(JwtDecoder delegate, int maxEntries) {
+        this(delegate, maxEntries, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a caching decoder.
+     *
+     * @param delegate The decoder that performs the actual verification
+     * @param maxEntries Maximum number of verified tokens kept in memory
+     * @param clock Clock used to decide whether a cached token has expired
+     */
+    public CachingJwtDecoder(JwtDecoder delegate, int maxEntries, Clock clock) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cached Jwt for this token if it is still within its lifetime,
+     * otherwise decodes it with the delegate and caches the result.
+     *
+     * @param token The raw bearer token
+     * @return The verified Jwt
+     * @throws JwtException If the delegate rejects the token
+     */
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        String key = fingerprint(token);
+        Jwt cached = cache.get(key);
+        if (cached != null) {
+            if (isLive(cached)) {
+                hits.increment();
+                return cached;
+            }
+            // Expired: drop it and let the delegate produce the proper validation error
+            cache.remove(key, cached);
+        }
+
+        misses.increment();
+        Jwt jwt = delegate.decode(token);
+        if (jwt.getExpiresAt() != null && isLive(jwt)) {
+            if (cache.size() >= maxEntries) {
+                evict();
+            }
+            cache.put(key, jwt);
+        }
+        return jwt;
+    }
+
+    /**
+     * Removes a single token from the cache, e.g. after it has been revoked.
+     *
+     * @param token The raw bearer token
+     */
+    public void invalidate(String token) {
+        cache.remove(fingerprint(token));
+    }
+
+    /**
+     * Removes every cached token, e.g. after a signing key has been withdrawn.
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    private boolean isLive(Jwt jwt) {
+        Instant expiresAt = jwt.getExpiresAt();
+        return expiresAt != null && clock.instant().isBefore(expiresAt);
+    }
+
+    /**
+     * Makes room for new entries: expired tokens go first, then arbitrary entries
+     * until the cache is back under 90% of its capacity.
+     */
+    private synchronized void evict() {
+        if (cache.size() < maxEntries) {
+            return;
+        }
+        cache.values().removeIf(jwt -> !isLive(jwt));
+
+        int target = maxEntries - Math.max(1, maxEntries / 10);
+        Iterator<String> keys = cache.keySet().iterator();
+        while (cache.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+        log.debug("Evicted verified JWTs, {} remain cached", cache.size());
+    }
+
+    private static String fingerprint(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package com.postgrad.securitydemo.config;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.hc.client5.http.classic.HttpClient;
-import org.apache.hc.client5.http.impl.classic.HttpClientBuilder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.DefaultConnectionKeepAliveStrategy;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.keycloak.adapters.springsecurity.client.KeycloakRestTemplate;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.time.Duration;
+
 /**
  * Factory class for creating HTTP clients that are compatible with Keycloak authentication.
  *
@@ -15,7 +26,10 @@ import org.springframework.web.client.RestTemplate;
  * when the application needs to use HttpClient 5 for other purposes.
  *
  * This factory:
- * - Creates an HttpClient 5 instance
+ * - Creates an HttpClient 5 instance backed by a bounded connection pool
+ * - Applies connect, connection-lease and socket timeouts so a slow Keycloak fails fast
+ *   instead of holding request threads
+ * - Caps keep-alive and evicts idle or expired pooled connections in the background
  * - Configures a compatible request factory
  * - Produces a RestTemplate that can be used for authenticated Keycloak communication
  *
@@ -28,20 +42,55 @@ public class CustomKeycloakClientRequestFactory {
      * The HttpClient instance used for all HTTP communication with Keycloak.
      * Using a single instance allows for connection pooling and efficient resource usage.
      */
-    private final HttpClient httpClient;
+    private final CloseableHttpClient httpClient;
 
     /**
-     * Constructor that initializes a new HttpClient with default settings.
-     *
-     * This creates a basic HttpClient instance using HttpClient 5's builder pattern.
-     * For production use, this client could be further configured with:
-     * - Connection timeouts
-     * - Connection pooling settings
-     * - Retry strategies
-     * - SSL configuration
+     * The pool behind the HttpClient, kept to report leased/available/pending connections as metrics.
+     */
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    /**
+     * Constructor that initializes a new HttpClient with default transport settings.
      */
     public CustomKeycloakClientRequestFactory() {
-        this.httpClient = HttpClientBuilder.create().build();
+        this(Settings.defaults());
+    }
+
+    /**
+     * Constructor that initializes a new pooled HttpClient with the given transport settings.
+     *
+     * @param settings Pool sizing, timeouts and connection lifetime settings
+     */
+    public CustomKeycloakClientRequestFactory(Settings settings) {
+        this.connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(settings.maxTotal())
+                .setMaxConnPerRoute(settings.maxPerRoute())
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.of(settings.connectTimeout()))
+                        .setSocketTimeout(Timeout.of(settings.socketTimeout()))
+                        .setValidateAfterInactivity(TimeValue.of(settings.validateAfterInactivity()))
+                        .build())
+                .build();
+
+        TimeValue maxKeepAlive = TimeValue.of(settings.keepAlive());
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        // How long a caller may wait for a pooled connection before giving up
+                        .setConnectionRequestTimeout(Timeout.of(settings.connectionRequestTimeout()))
+                        .setResponseTimeout(Timeout.of(settings.socketTimeout()))
+                        .build())
+                // Honour the server's Keep-Alive header, but never keep a connection longer than configured
+                .setKeepAliveStrategy((response, context) -> {
+                    TimeValue serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return TimeValue.isPositive(serverKeepAlive) && serverKeepAlive.compareTo(maxKeepAlive) < 0
+                            ? serverKeepAlive : maxKeepAlive;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.of(settings.idleEviction()))
+                .build();
+
+        log.debug("Created Keycloak HttpClient with settings {}", settings);
     }
 
     /**
@@ -71,4 +120,45 @@ public class CustomKeycloakClientRequestFactory {
         // Return a new RestTemplate with our custom factory
         return new RestTemplate(requestFactory);
     }
+
+    /**
+     * Returns a snapshot of the connection pool: leased, available and pending connections
+     * and the pool maximum.
+     *
+     * @return Current totals across all routes
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Closes the HttpClient and its connection pool.
+     *
+     * @throws IOException If closing the client fails
+     */
+    public void close() throws IOException {
+        httpClient.close();
+    }
+
+    /**
+     * Transport settings for the Keycloak HttpClient.
+     *
+     * @param maxTotal Maximum pooled connections across all routes
+     * @param maxPerRoute Maximum pooled connections per route (Keycloak is usually a single route)
+     * @param connectTimeout Timeout for establishing a TCP connection
+     * @param connectionRequestTimeout Timeout for leasing a connection from the pool
+     * @param socketTimeout Timeout waiting for data on an established connection
+     * @param keepAlive Upper bound on how long an idle connection is kept for reuse
+     * @param idleEviction Idle time after which the background evictor closes a connection
+     * @param validateAfterInactivity Idle time after which a connection is checked before reuse
+     */
+    public record Settings(int maxTotal, int maxPerRoute, Duration connectTimeout, Duration connectionRequestTimeout,
+                           Duration socketTimeout, Duration keepAlive, Duration idleEviction,
+                           Duration validateAfterInactivity) {
+
+        public static Settings defaults() {
+            return new Settings(50, 50, Duration.ofSeconds(2), Duration.ofSeconds(1), Duration.ofSeconds(5),
+                    Duration.ofSeconds(30), Duration.ofSeconds(30), Duration.ofSeconds(2));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,108 @@
+package com.postgrad.securitydemo.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.actuate.metrics.http.Outcome;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+/**
+ * RestTemplate interceptor that times every call to Keycloak.
+ *
+ * Calls are grouped by endpoint rather than by URL, so user IDs and realm names do not end
+ * up as tag values:
+ * - token: the OpenID Connect token endpoint (admin login and refresh)
+ * - certs: the JWK set used to verify bearer tokens
+ * - user: the admin API lookup of a single user
+ * - users: the admin API user listing used by the sync
+ *
+ * Each call is recorded in the keycloak.client.requests timer, tagged with endpoint, method,
+ * status and outcome. Calls that fail or do not answer 2xx also increment
+ * keycloak.client.errors. Time is measured until the response headers arrive; streamed
+ * bodies are read after that. The meters are registered once per tag combination and reused.
+ */
+public class KeycloakClientMetrics implements ClientHttpRequestInterceptor {
+
+    private static final Pattern USER_PATH = Pattern.compile(".*/admin/realms/[^/]+/users/[^/]+");
+    private static final Pattern USERS_PATH = Pattern.compile(".*/admin/realms/[^/]+/users");
+
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<Call, Meters> meters = new ConcurrentHashMap<>();
+
+    public KeycloakClientMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        String endpoint = endpoint(request.getURI().getPath());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String status = "IO_ERROR";
+        Outcome outcome = Outcome.UNKNOWN;
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            int statusCode = response.getStatusCode().value();
+            status = String.valueOf(statusCode);
+            outcome = Outcome.forStatus(statusCode);
+            return response;
+        } finally {
+            Meters callMeters = meters.computeIfAbsent(
+                    new Call(endpoint, request.getMethod().name(), status, outcome), this::register);
+            sample.stop(callMeters.requests());
+            if (callMeters.errors() != null) {
+                callMeters.errors().increment();
+            }
+        }
+    }
+
+    private Meters register(Call call) {
+        Timer requests = Timer.builder("keycloak.client.requests")
+                .description("Calls to Keycloak")
+                .tag("endpoint", call.endpoint())
+                .tag("method", call.method())
+                .tag("status", call.status())
+                .tag("outcome", call.outcome().name())
+                .register(meterRegistry);
+        Counter errors = null;
+        if (call.outcome() != Outcome.SUCCESS) {
+            errors = Counter.builder("keycloak.client.errors")
+                    .description("Calls to Keycloak that failed or did not answer 2xx")
+                    .tag("endpoint", call.endpoint())
+                    .tag("status", call.status())
+                    .register(meterRegistry);
+        }
+        return new Meters(requests, errors);
+    }
+
+    static String endpoint(String path) {
+        if (path.endsWith("/protocol/openid-connect/token")) {
+            return "token";
+        }
+        if (path.endsWith("/protocol/openid-connect/certs")) {
+            return "certs";
+        }
+        if (USERS_PATH.matcher(path).matches()) {
+            return "users";
+        }
+        if (USER_PATH.matcher(path).matches()) {
+            return "user";
+        }
+        return "other";
+    }
+
+    private record Call(String endpoint, String method, String status, Outcome outcome) {
+    }
+
+    // errors is null for successful calls
+    private record Meters(Timer requests, Counter errors) {
+    }
+}
@@ -1,10 +1,18 @@
 package com.postgrad.securitydemo.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.hc.core5.pool.PoolStats;
 import org.keycloak.adapters.springboot.KeycloakSpringBootConfigResolver;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
+import java.util.function.ToIntFunction;
+
 /**
  * Configuration class for Keycloak integration.
  *
@@ -38,15 +46,51 @@ public class KeycloakConfig {
      * Creates a custom Keycloak client request factory for HTTP communication.
      *
      * This factory handles compatibility with HttpClient 5 and manages the details of
-     * creating properly configured HTTP clients for Keycloak communication.
-     * It may include features like connection pooling, timeout configuration,
-     * and proper header management for OAuth2 communication.
+     * creating properly configured HTTP clients for Keycloak communication:
+     * connection pooling, keep-alive, idle-connection eviction and timeouts,
+     * all configurable through keycloak.http.* properties.
      *
      * @return A new instance of CustomKeycloakClientRequestFactory
      */
+    @Bean(destroyMethod = "close")
+    public CustomKeycloakClientRequestFactory customKeycloakClientRequestFactory(
+            @Value("${keycloak.http.max-total:50}") int maxTotal,
+            @Value("${keycloak.http.max-per-route:50}") int maxPerRoute,
+            @Value("${keycloak.http.connect-timeout:PT2S}") Duration connectTimeout,
+            @Value("${keycloak.http.connection-request-timeout:PT1S}") Duration connectionRequestTimeout,
+            @Value("${keycloak.http.socket-timeout:PT5S}") Duration socketTimeout,
+            @Value("${keycloak.http.keep-alive:PT30S}") Duration keepAlive,
+            @Value("${keycloak.http.idle-eviction:PT30S}") Duration idleEviction,
+            @Value("${keycloak.http.validate-after-inactivity:PT2S}") Duration validateAfterInactivity) {
+        return new CustomKeycloakClientRequestFactory(new CustomKeycloakClientRequestFactory.Settings(
+                maxTotal, maxPerRoute, connectTimeout, connectionRequestTimeout, socketTimeout,
+                keepAlive, idleEviction, validateAfterInactivity));
+    }
+
+    /**
+     * Publishes the Keycloak connection pool as gauges: keycloak.http.pool.leased, .available,
+     * .pending (callers waiting for a connection) and .max, totalled across routes.
+     *
+     * @param factory The request factory owning the pool
+     * @return The binder registering the pool gauges
+     */
     @Bean
-    public CustomKeycloakClientRequestFactory customKeycloakClientRequestFactory() {
-        return new CustomKeycloakClientRequestFactory();
+    public MeterBinder keycloakHttpPoolMetrics(CustomKeycloakClientRequestFactory factory) {
+        return registry -> {
+            poolGauge(registry, factory, "leased", "Connections to Keycloak in use", PoolStats::getLeased);
+            poolGauge(registry, factory, "available", "Idle connections to Keycloak kept for reuse",
+                    PoolStats::getAvailable);
+            poolGauge(registry, factory, "pending", "Requests waiting for a connection to Keycloak",
+                    PoolStats::getPending);
+            poolGauge(registry, factory, "max", "Maximum connections to Keycloak", PoolStats::getMax);
+        };
+    }
+
+    private static void poolGauge(MeterRegistry registry, CustomKeycloakClientRequestFactory factory, String name,
+                                  String description, ToIntFunction<PoolStats> value) {
+        Gauge.builder("keycloak.http.pool." + name, factory, f -> value.applyAsInt(f.getPoolStats()))
+                .description(description)
+                .register(registry);
     }
 
     /**
@@ -57,11 +101,16 @@ public class KeycloakConfig {
      * It can be injected in services that need to communicate with the Keycloak server
      * for administrative tasks or token introspection.
      *
+     * Every call is timed per Keycloak endpoint, see KeycloakClientMetrics.
+     *
      * @param factory The CustomKeycloakClientRequestFactory to use for creating the RestTemplate
+     * @param meterRegistry Registry receiving the Keycloak call metrics
      * @return A RestTemplate configured for Keycloak communication
      */
     @Bean
-    public RestTemplate keycloakRestTemplate(CustomKeycloakClientRequestFactory factory) {
-        return factory.createRestTemplate();
+    public RestTemplate keycloakRestTemplate(CustomKeycloakClientRequestFactory factory, MeterRegistry meterRegistry) {
+        RestTemplate restTemplate = factory.createRestTemplate();
+        restTemplate.getInterceptors().add(new KeycloakClientMetrics(meterRegistry));
+        return restTemplate;
     }
 }
\ No newline at end of file
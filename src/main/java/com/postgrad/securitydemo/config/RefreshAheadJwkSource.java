@@ -0,0 +1,249 @@
+package com.postgrad.securitydemo.config;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.client.RestOperations;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JWK source that keeps Keycloak's signing keys in memory and refreshes them ahead of time.
+ *
+ * The default resource-server decoder fetches the JWK set lazily, so the first request after
+ * boot and the first request after a key rotation wait on a remote call to Keycloak's certs
+ * endpoint. This source moves that work off the request path.
+ *
+ * This source:
+ * - Prefetches the JWK set when started
+ * - Refreshes it in the background before the configured TTL runs out
+ * - Serves the last known keys if a background refresh fails
+ * - Handles an unknown "kid" with one refetch that all waiting threads share,
+ *   rate-limited so a stream of tokens with a bogus kid cannot hammer Keycloak
+ */
+@Slf4j
+public class RefreshAheadJwkSource implements JWKSource<SecurityContext>, AutoCloseable {
+
+    private final String jwkSetUri;
+    private final RestOperations restOperations;
+    private final Duration ttl;
+    private final Duration refreshAhead;
+    private final Duration minRefetchInterval;
+    private final Clock clock;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jwk-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Last successfully fetched key set, null until the first fetch succeeds
+    private volatile CachedJwkSet current;
+
+    // Fetch currently in progress, shared by every thread that needs fresh keys
+    private CompletableFuture<JWKSet> inFlight;
+
+    // When the last fetch was started, used to rate-limit unknown-kid refetches
+    private volatile Instant lastFetchStarted = Instant.EPOCH;
+
+    /**
+     * Creates a JWK source using the system clock.
+     *
+     * @param jwkSetUri Location of the JWK set (Keycloak's certs endpoint)
+     * @param restOperations Client used to download the JWK set
+     * @param ttl How long a fetched key set is considered current
+     * @param refreshAhead How long before the TTL runs out the background refresh happens
+     * @param minRefetchInterval Minimum time between two fetches triggered by unknown key IDs
+     */
+    public RefreshAheadJwkSource(String jwkSetUri, RestOperations restOperations, Duration ttl,
+                                 Duration refreshAhead, Duration minRefetchInterval) {
+        this(jwkSetUri, restOperations, ttl, refreshAhead, minRefetchInterval, Clock.systemUTC());
+    }
+
+    /**
+     * Creates a JWK source.
+     *
+     * @param jwkSetUri Location of the JWK set (Keycloak's certs endpoint)
+     * @param restOperations Client used to download the JWK set
+     * @param ttl How long a fetched key set is considered current
+     * @param refreshAhead How long before the TTL runs out the background refresh happens
+     * @param minRefetchInterval Minimum time between two fetches triggered by unknown key IDs
+     * @param clock Clock used for TTL and rate-limit decisions
+     */
+    public RefreshAheadJwkSource(String jwkSetUri, RestOperations restOperations, Duration ttl,
+                                 Duration refreshAhead, Duration minRefetchInterval, Clock clock) {
+        if (refreshAhead.compareTo(ttl) >= 0) {
+            throw new IllegalArgumentException("refreshAhead must be shorter than ttl");
+        }
+        this.jwkSetUri = jwkSetUri;
+        this.restOperations = restOperations;
+        this.ttl = ttl;
+        this.refreshAhead = refreshAhead;
+        this.minRefetchInterval = minRefetchInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Fetches the key set once and schedules the background refresh.
+     * A failed prefetch is logged; the keys are then fetched on first use instead.
+     */
+    public void start() {
+        prefetch();
+        long period = ttl.minus(refreshAhead).toMillis();
+        scheduler.scheduleWithFixedDelay(this::backgroundRefresh, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Fetches the key set, logging instead of throwing on failure.
+     */
+    public void prefetch() {
+        try {
+            JWKSet jwkSet = fetchShared();
+            log.info("Prefetched {} signing keys from {}", jwkSet.getKeys().size(), jwkSetUri);
+        } catch (KeySourceException e) {
+            log.warn("Could not prefetch signing keys from {}: {}", jwkSetUri, e.getMessage());
+        }
+    }
+
+    /**
+     * Selects keys from the cached set. The key set is only fetched on the request path when
+     * nothing has been loaded yet, or when the token references a key ID that is not known.
+     */
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+        CachedJwkSet snapshot = current;
+        if (snapshot == null) {
+            return jwkSelector.select(fetchShared());
+        }
+
+        List<JWK> keys = jwkSelector.select(snapshot.jwkSet());
+        Set<String> keyIds = jwkSelector.getMatcher().getKeyIDs();
+        if (keys.isEmpty() && keyIds != null && !keyIds.isEmpty()) {
+            // Unknown kid: probably a rotation we have not seen yet
+            JWKSet refetched = refetchForUnknownKey(snapshot);
+            if (refetched != null) {
+                keys = jwkSelector.select(refetched);
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @return When the current key set was fetched, or null if none has been fetched yet
+     */
+    public Instant lastRefreshed() {
+        CachedJwkSet snapshot = current;
+        return snapshot != null ? snapshot.fetchedAt() : null;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void backgroundRefresh() {
+        try {
+            fetchShared();
+            log.debug("Refreshed signing keys from {}", jwkSetUri);
+        } catch (KeySourceException e) {
+            CachedJwkSet snapshot = current;
+            boolean stale = snapshot == null || snapshot.fetchedAt().plus(ttl).isBefore(clock.instant());
+            log.warn("Background refresh of signing keys failed ({}): {}",
+                    stale ? "serving stale keys" : "current keys still valid", e.getMessage());
+        }
+    }
+
+    /**
+     * Refetches after an unknown key ID, unless a fetch already happened within
+     * minRefetchInterval. Returns null when the refetch was suppressed.
+     */
+    private JWKSet refetchForUnknownKey(CachedJwkSet seen) throws KeySourceException {
+        return fetchShared(seen);
+    }
+
+    private JWKSet fetchShared() throws KeySourceException {
+        return fetchShared(null);
+    }
+
+    /**
+     * Fetches the key set, or joins the fetch that is already in progress.
+     *
+     * @param seen For a refetch after an unknown key ID, the key set the caller looked in;
+     *             a newer set stored since then is returned instead of fetching again, and the
+     *             fetch is skipped (returning null) if one was started less than
+     *             minRefetchInterval ago. Null for an unconditional fetch.
+     */
+    private JWKSet fetchShared(CachedJwkSet seen) throws KeySourceException {
+        CompletableFuture<JWKSet> future;
+        boolean leader = false;
+        synchronized (this) {
+            if (inFlight == null) {
+                // Checked under the lock: a fetch stores its result before it stops being in flight
+                CachedJwkSet latest = current;
+                if (seen != null && latest != seen) {
+                    return latest.jwkSet();
+                }
+                if (seen != null && lastFetchStarted.plus(minRefetchInterval).isAfter(clock.instant())) {
+                    log.debug("Suppressing JWK refetch for unknown key ID, last fetch was at {}", lastFetchStarted);
+                    return null;
+                }
+                inFlight = new CompletableFuture<>();
+                lastFetchStarted = clock.instant();
+                leader = true;
+            }
+            future = inFlight;
+        }
+
+        if (leader) {
+            try {
+                JWKSet jwkSet = fetch();
+                current = new CachedJwkSet(jwkSet, clock.instant());
+                future.complete(jwkSet);
+            } catch (RuntimeException | KeySourceException e) {
+                future.completeExceptionally(e);
+            } finally {
+                synchronized (this) {
+                    inFlight = null;
+                }
+            }
+        }
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof KeySourceException keySourceException) {
+                throw keySourceException;
+            }
+            throw new KeySourceException("Failed to fetch JWK set from " + jwkSetUri, cause);
+        }
+    }
+
+    private JWKSet fetch() throws KeySourceException {
+        String body = restOperations.getForObject(jwkSetUri, String.class);
+        if (body == null) {
+            throw new KeySourceException("Empty JWK set response from " + jwkSetUri);
+        }
+        try {
+            return JWKSet.parse(body);
+        } catch (java.text.ParseException e) {
+            throw new KeySourceException("Invalid JWK set from " + jwkSetUri, e);
+        }
+    }
+
+    private record CachedJwkSet(JWKSet jwkSet, Instant fetchedAt) {
+    }
+}
@@ -1,9 +1,51 @@
 package com.postgrad.securitydemo.config;
 
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import com.postgrad.securitydemo.security.BulkheadFilter;
+import com.postgrad.securitydemo.security.PathDispatchAuthorizationManager;
+import com.postgrad.securitydemo.security.Policy;
+import com.postgrad.securitydemo.security.PolicyRegistry;
+import com.postgrad.securitydemo.security.RateLimitFilter;
+import com.postgrad.securitydemo.security.RequestRateLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Role;
 import org.springframework.core.convert.converter.Converter;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.access.expression.method.DefaultMethodSecurityExpressionHandler;
+import org.springframework.security.access.expression.method.MethodSecurityExpressionHandler;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.authentication.AuthenticationEventPublisher;
+import org.springframework.security.authentication.DefaultAuthenticationEventPublisher;
+import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
+import org.springframework.security.authorization.AuthenticatedAuthorizationManager;
+import org.springframework.security.authorization.AuthorityAuthorizationManager;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationEventPublisher;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.method.AuthorizationInterceptorsOrder;
+import org.springframework.security.authorization.method.AuthorizationManagerAfterMethodInterceptor;
+import org.springframework.security.authorization.method.AuthorizationManagerBeforeMethodInterceptor;
+import org.springframework.security.authorization.method.MethodInvocationResult;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
@@ -12,13 +54,27 @@ import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
 import org.springframework.security.oauth2.server.resource.authentication.JwtGrantedAuthoritiesConverter;
+import org.springframework.security.oauth2.server.resource.web.authentication.BearerTokenAuthenticationFilter;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.access.intercept.AuthorizationFilter;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.util.function.SingletonSupplier;
+import org.springframework.web.client.RestTemplate;
 
+import java.time.Duration;
 import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Security configuration class for the application.
@@ -29,8 +85,10 @@ import java.util.stream.Collectors;
  * - Disables CSRF protection for API endpoints
  * - Enables CORS
  * - Sets up stateless session management (no HTTP sessions)
- * - Configures URL-based access control
+ * - Configures URL-based access control, including the actuator endpoints
+ * - Rate limits requests per principal and caps concurrent expensive admin operations
  * - Sets up JWT authentication with role mapping from Keycloak
+ * - Wires typed @Policy checks next to @PreAuthorize/@PostAuthorize
  *
  * @Configuration marks this as a Spring configuration class
  * @EnableWebSecurity enables Spring Security's web security features
@@ -41,15 +99,34 @@ import java.util.stream.Collectors;
 @EnableMethodSecurity
 public class SecurityConfig {
 
+    private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
     /**
      * Configures the security filter chain for HTTP requests.
      *
      * @param http The HttpSecurity object to configure
+     * @param jwtAuthenticationConverter Converter mapping Keycloak tokens to authentication objects
+     * @param urlAuthorizationManager The compiled URL access rules
+     * @param rateLimitEnabled Whether requests are rate limited per principal
+     * @param requestRateLimiter Token buckets per principal and route group
+     * @param bulkheadFilter Concurrency limits for expensive operations
      * @return The built SecurityFilterChain
      * @throws Exception If an error occurs during configuration
      */
     @Bean
-    public SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain securityFilterChain(HttpSecurity http,
+                                                   JwtAuthenticationConverter jwtAuthenticationConverter,
+                                                   PathDispatchAuthorizationManager urlAuthorizationManager,
+                                                   @Value("${security.rate-limit.enabled:true}") boolean rateLimitEnabled,
+                                                   RequestRateLimiter requestRateLimiter,
+                                                   BulkheadFilter bulkheadFilter) throws Exception {
+        if (rateLimitEnabled) {
+            // Limit per authenticated principal, before any authorization or application work
+            http.addFilterAfter(new RateLimitFilter(requestRateLimiter), BearerTokenAuthenticationFilter.class);
+        }
+        // Only requests that passed authorization take a bulkhead permit
+        http.addFilterAfter(bulkheadFilter, AuthorizationFilter.class);
         http
                 // Disable CSRF protection since we're using stateless JWT authentication
                 .csrf(AbstractHttpConfigurer::disable)
@@ -59,40 +136,348 @@ public class SecurityConfig {
                 .sessionManagement(session -> session
                         .sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 )
-                // Configure URL-based access control
+                // Configure URL-based access control; the rules themselves are compiled into a path trie
                 .authorizeHttpRequests(authorize -> authorize
-                        // Public endpoints accessible to all
-                        .requestMatchers("/api/public/**").permitAll()
-                        .requestMatchers("/api/health/**").permitAll()
-                        .requestMatchers("/api/docs/**").permitAll()
-                        // User-specific endpoints require USER role
-                        .requestMatchers("/api/user/**").hasRole("USER")
-                        // Admin endpoints require ADMIN role
-                        .requestMatchers("/api/admin/**").hasRole("ADMIN")
-                        // All other endpoints require authentication
-                        .anyRequest().authenticated()
+                        .anyRequest().access(urlAuthorizationManager)
                 )
                 // Configure OAuth2 resource server with JWT authentication
                 .oauth2ResourceServer(oauth2 -> oauth2
                         .jwt(jwt -> jwt
                                 // Use custom JWT authentication converter to extract roles
-                                .jwtAuthenticationConverter(jwtAuthenticationConverter())
+                                .jwtAuthenticationConverter(jwtAuthenticationConverter)
                         )
                 );
 
         return http.build();
     }
 
+    /**
+     * Creates the URL access rules. They are declared in order and the first matching rule
+     * decides, as with requestMatchers(...), but they are compiled into a trie keyed by path
+     * segment, so a lookup costs the depth of the path rather than one match per rule, and
+     * lookups are memoized per request path.
+     *
+     * @param memoSize Upper bound on request paths whose lookup result is remembered
+     * @return The authorization manager for all HTTP requests
+     */
+    @Bean
+    public PathDispatchAuthorizationManager urlAuthorizationManager(
+            @Value("${security.url-rules.memo-size:4096}") int memoSize) {
+        AuthorizationManager<RequestAuthorizationContext> permitAll = (authentication, context) -> GRANTED;
+        return PathDispatchAuthorizationManager.builder()
+                // Public endpoints accessible to all
+                .rule(permitAll, "/api/public/**", "/api/health/**", "/api/docs/**")
+                // User-specific endpoints require USER role
+                .rule(AuthorityAuthorizationManager.hasRole("USER"), "/api/user/**")
+                // Admin endpoints require ADMIN role
+                .rule(AuthorityAuthorizationManager.hasRole("ADMIN"), "/api/admin/**")
+                // Health probes are public; metrics and the other actuator endpoints are admin-only
+                .rule(permitAll, "/actuator/health", "/actuator/health/**")
+                .rule(AuthorityAuthorizationManager.hasRole("ADMIN"), "/actuator/**")
+                // All other endpoints require authentication
+                .anyRequest(AuthenticatedAuthorizationManager.authenticated())
+                .memoSize(memoSize)
+                .build();
+    }
+
+    /**
+     * Creates the expression handler for @PreAuthorize and @PostAuthorize expressions that
+     * have not been moved to typed policies yet. Expressions are compiled to bytecode once
+     * they have been interpreted a few times (falling back to interpretation if compilation
+     * fails), and hasPermission(...) resolves against our ownership-aware evaluator.
+     * Declared static, as Spring Security recommends, so it is available before the
+     * method security infrastructure is built; the evaluator is injected lazily so its
+     * repository is not initialized that early.
+     *
+     * @param permissionEvaluator Evaluator for resource permissions
+     * @return The method security expression handler
+     */
+    @Bean
+    static MethodSecurityExpressionHandler methodSecurityExpressionHandler(@Lazy PermissionEvaluator permissionEvaluator) {
+        DefaultMethodSecurityExpressionHandler handler = new DefaultMethodSecurityExpressionHandler();
+        handler.setPermissionEvaluator(permissionEvaluator);
+        handler.setExpressionParser(new SpelExpressionParser(
+                new SpelParserConfiguration(SpelCompilerMode.MIXED, SecurityConfig.class.getClassLoader())));
+        return handler;
+    }
+
+    /**
+     * Creates the interceptor that checks @Policy pre-policies, in the same position as
+     * @PreAuthorize. The registry is looked up on first use so that advisor creation does
+     * not pull application beans into early initialization.
+     *
+     * @param policyRegistry Registry of resolved policies
+     * @param eventPublisher Receiver of the decisions, for the audit trail
+     * @return The advisor for @Policy(pre = ...)
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor policyPreAuthorizeAdvisor(ObjectProvider<PolicyRegistry> policyRegistry,
+                                             ObjectProvider<AuthorizationEventPublisher> eventPublisher) {
+        Supplier<PolicyRegistry> registry = SingletonSupplier.of(policyRegistry::getObject);
+        // Abstains (null) for methods that only have a post-policy, so no decision is reported for them
+        AuthorizationManager<MethodInvocation> manager = (authentication, invocation) ->
+                !registry.get().hasPrePolicy(invocation.getMethod()) ? null
+                        : registry.get().permitsInvocation(invocation.getMethod(), authentication.get(), invocation.getArguments())
+                        ? GRANTED : DENIED;
+        AuthorizationManagerBeforeMethodInterceptor interceptor = new AuthorizationManagerBeforeMethodInterceptor(
+                new AnnotationMatchingPointcut(null, Policy.class, true), manager);
+        interceptor.setOrder(AuthorizationInterceptorsOrder.PRE_AUTHORIZE.getOrder());
+        eventPublisher.ifAvailable(interceptor::setAuthorizationEventPublisher);
+        return interceptor;
+    }
+
+    /**
+     * Creates the interceptor that checks @Policy post-policies against return values,
+     * in the same position as @PostAuthorize.
+     *
+     * @param policyRegistry Registry of resolved policies
+     * @param eventPublisher Receiver of the decisions, for the audit trail
+     * @return The advisor for @Policy(post = ...)
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    static Advisor policyPostAuthorizeAdvisor(ObjectProvider<PolicyRegistry> policyRegistry,
+                                              ObjectProvider<AuthorizationEventPublisher> eventPublisher) {
+        Supplier<PolicyRegistry> registry = SingletonSupplier.of(policyRegistry::getObject);
+        AuthorizationManager<MethodInvocationResult> manager = (authentication, result) ->
+                !registry.get().hasPostPolicy(result.getMethodInvocation().getMethod()) ? null
+                        : registry.get().permitsResult(result.getMethodInvocation().getMethod(), authentication.get(), result.getResult())
+                        ? GRANTED : DENIED;
+        AuthorizationManagerAfterMethodInterceptor interceptor = new AuthorizationManagerAfterMethodInterceptor(
+                new AnnotationMatchingPointcut(null, Policy.class, true), manager);
+        interceptor.setOrder(AuthorizationInterceptorsOrder.POST_AUTHORIZE.getOrder());
+        eventPublisher.ifAvailable(interceptor::setAuthorizationEventPublisher);
+        return interceptor;
+    }
+
+    /**
+     * Creates the per-principal rate limits. Route groups are matched in order and each has
+     * its own token bucket per principal; anonymous requests are limited per client address.
+     * Limits are written as "permits/period", e.g. 600/PT1M.
+     *
+     * Rejections are counted in security.rate-limit.rejections (tagged with the group) and
+     * the number of live buckets is reported as security.rate-limit.buckets.
+     *
+     * @param stripes Number of independently swept bucket stripes
+     * @param idleTimeout How long an unused bucket is kept
+     * @param userBulkLimit Limit for listing, export, bulk and batch endpoints
+     * @param adminLimit Limit for admin endpoints
+     * @param userLimit Limit for the other user endpoints
+     * @param publicLimit Limit for public endpoints
+     * @param meterRegistry Registry receiving the rate limit metrics
+     * @return The rate limiter used by the security filter chain
+     */
+    @Bean
+    public RequestRateLimiter requestRateLimiter(
+            @Value("${security.rate-limit.stripes:16}") int stripes,
+            @Value("${security.rate-limit.idle-timeout:PT10M}") Duration idleTimeout,
+            @Value("${security.rate-limit.limits.user-bulk:30/PT1M}") String userBulkLimit,
+            @Value("${security.rate-limit.limits.admin:120/PT1M}") String adminLimit,
+            @Value("${security.rate-limit.limits.user:600/PT1M}") String userLimit,
+            @Value("${security.rate-limit.limits.public:300/PT1M}") String publicLimit,
+            MeterRegistry meterRegistry) {
+        RequestRateLimiter rateLimiter = RequestRateLimiter.builder()
+                .group("user-bulk", userBulkLimit, "/api/user/resources/all", "/api/user/resources/export",
+                        "/api/user/resources/bulk", "/api/user/resources/bulk/**", "/api/user/users/batch")
+                .group("admin", adminLimit, "/api/admin/**")
+                .group("user", userLimit, "/api/user/**")
+                .group("public", publicLimit, "/api/public/**")
+                .stripes(stripes)
+                .idleTimeout(idleTimeout)
+                .build();
+        for (RequestRateLimiter.Group group : rateLimiter.groups()) {
+            FunctionCounter.builder("security.rate-limit.rejections", group, RequestRateLimiter.Group::rejected)
+                    .description("Requests rejected with 429 Too Many Requests")
+                    .tag("group", group.name())
+                    .register(meterRegistry);
+        }
+        Gauge.builder("security.rate-limit.buckets", rateLimiter, RequestRateLimiter::size)
+                .description("Token buckets held in memory")
+                .register(meterRegistry);
+        return rateLimiter;
+    }
+
+    /**
+     * Creates the bulkhead for expensive admin operations. A full user synchronization holds
+     * a server thread and the Keycloak client for its whole run; further sync requests are
+     * turned away with 503 and Retry-After instead of queueing behind it.
+     *
+     * Active requests are reported as security.bulkhead.active and rejections as
+     * security.bulkhead.rejections, both tagged with the compartment.
+     *
+     * @param syncMaxConcurrent User synchronizations allowed to run at the same time
+     * @param syncMaxWait How long a sync request may wait for a running one to finish
+     * @param syncRetryAfter Retry-After sent with rejected sync requests
+     * @param meterRegistry Registry receiving the bulkhead metrics
+     * @return The bulkhead filter used by the security filter chain
+     */
+    @Bean
+    public BulkheadFilter bulkheadFilter(
+            @Value("${security.bulkhead.user-sync.max-concurrent:1}") int syncMaxConcurrent,
+            @Value("${security.bulkhead.user-sync.max-wait:PT0S}") Duration syncMaxWait,
+            @Value("${security.bulkhead.user-sync.retry-after:PT30S}") Duration syncRetryAfter,
+            MeterRegistry meterRegistry) {
+        BulkheadFilter bulkhead = BulkheadFilter.builder()
+                .compartment("user-sync", syncMaxConcurrent, syncMaxWait, syncRetryAfter, "/api/admin/users/sync")
+                .build();
+        for (BulkheadFilter.Compartment compartment : bulkhead.compartments()) {
+            Gauge.builder("security.bulkhead.active", compartment, BulkheadFilter.Compartment::active)
+                    .description("Requests holding a bulkhead permit")
+                    .tag("compartment", compartment.name())
+                    .register(meterRegistry);
+            FunctionCounter.builder("security.bulkhead.rejections", compartment, BulkheadFilter.Compartment::rejected)
+                    .description("Requests rejected with 503 because the bulkhead was full")
+                    .tag("compartment", compartment.name())
+                    .register(meterRegistry);
+        }
+        return bulkhead;
+    }
+
+    /**
+     * Keeps the servlet container from running the bulkhead a second time, outside of the
+     * security filter chain.
+     *
+     * @param bulkheadFilter The bulkhead filter bean
+     * @return A disabled registration for it
+     */
+    @Bean
+    public FilterRegistrationBean<BulkheadFilter> bulkheadFilterRegistration(BulkheadFilter bulkheadFilter) {
+        FilterRegistrationBean<BulkheadFilter> registration = new FilterRegistrationBean<>(bulkheadFilter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    /**
+     * Creates the publisher of authentication success and failure events, which feed the
+     * audit trail. Rejected bearer tokens fail with exception types that have no dedicated
+     * event, so those are reported as bad credentials instead of being dropped.
+     *
+     * @param applicationEventPublisher Publisher delivering the events to listeners
+     * @return The authentication event publisher
+     */
+    @Bean
+    public AuthenticationEventPublisher authenticationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+        DefaultAuthenticationEventPublisher publisher = new DefaultAuthenticationEventPublisher(applicationEventPublisher);
+        publisher.setDefaultAuthenticationFailureEvent(AuthenticationFailureBadCredentialsEvent.class);
+        return publisher;
+    }
+
+    /**
+     * Creates the source of Keycloak's signing keys. Keys are prefetched when the bean starts
+     * and refreshed in the background, so neither the first request after boot nor the first
+     * request after a key rotation has to wait on Keycloak's certs endpoint.
+     *
+     * @param jwkSetUri Location of Keycloak's JWK set
+     * @param keycloakRestTemplate Client used to download the JWK set
+     * @param ttl How long a fetched key set is considered current
+     * @param refreshAhead How long before the TTL runs out the keys are refreshed
+     * @param minRefetchInterval Minimum time between refetches caused by unknown key IDs
+     * @return The JWK source backing the JwtDecoder
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public RefreshAheadJwkSource jwkSource(
+            @Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri}") String jwkSetUri,
+            RestTemplate keycloakRestTemplate,
+            @Value("${security.jwt.jwk.ttl:PT10M}") Duration ttl,
+            @Value("${security.jwt.jwk.refresh-ahead:PT1M}") Duration refreshAhead,
+            @Value("${security.jwt.jwk.min-refetch-interval:PT30S}") Duration minRefetchInterval) {
+        return new RefreshAheadJwkSource(jwkSetUri, keycloakRestTemplate, ttl, refreshAhead, minRefetchInterval);
+    }
+
+    /**
+     * Creates the JwtDecoder used by the resource server to verify bearer tokens.
+     * Tokens are verified against Keycloak's signing keys and must be issued by the configured realm.
+     *
+     * When the decoder cache is enabled, verified tokens are remembered until they expire so
+     * replayed tokens skip the signature check.
+     *
+     * Full verifications are timed as security.jwt.decode (tagged with their outcome); the
+     * decoder cache reports security.jwt.cache hits and misses and its size.
+     *
+     * @param jwkSource Source of Keycloak's signing keys
+     * @param issuerUri Expected "iss" claim of incoming tokens
+     * @param cacheEnabled Whether verified tokens should be cached
+     * @param maxEntries Maximum number of verified tokens kept in memory
+     * @param meterRegistry Registry receiving the decoder metrics
+     * @return The JwtDecoder for the resource server
+     */
+    @Bean
+    public JwtDecoder jwtDecoder(
+            RefreshAheadJwkSource jwkSource,
+            @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String issuerUri,
+            @Value("${security.jwt.decoder-cache.enabled:true}") boolean cacheEnabled,
+            @Value("${security.jwt.decoder-cache.max-entries:10000}") int maxEntries,
+            MeterRegistry meterRegistry) {
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, jwkSource));
+        // Claims are validated by Spring's validators below, with clock skew
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {});
+
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(jwtProcessor);
+        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(issuerUri));
+        Timer verified = decodeTimer(meterRegistry, "success");
+        Timer rejected = decodeTimer(meterRegistry, "failure");
+        JwtDecoder timedDecoder = token -> {
+            long start = System.nanoTime();
+            try {
+                Jwt jwt = decoder.decode(token);
+                verified.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return jwt;
+            } catch (RuntimeException e) {
+                rejected.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+        };
+        if (!cacheEnabled) {
+            return timedDecoder;
+        }
+
+        CachingJwtDecoder cachingDecoder = new CachingJwtDecoder(timedDecoder, maxEntries);
+        FunctionCounter.builder("security.jwt.cache", cachingDecoder, CachingJwtDecoder::hitCount)
+                .description("Bearer token lookups in the verified-token cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        FunctionCounter.builder("security.jwt.cache", cachingDecoder, CachingJwtDecoder::missCount)
+                .description("Bearer token lookups in the verified-token cache")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("security.jwt.cache.size", cachingDecoder, CachingJwtDecoder::size)
+                .description("Verified tokens held in memory")
+                .register(meterRegistry);
+        return cachingDecoder;
+    }
+
+    private static Timer decodeTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("security.jwt.decode")
+                .description("Bearer token signature and claim verification")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
     /**
      * Creates a custom JWT authentication converter that extracts roles from Keycloak tokens.
      * This converter will map Keycloak's role structure to Spring Security authorities.
      *
+     * Each conversion is timed as security.jwt.authorities.
+     *
+     * @param memoizeAuthorities Whether authority collections should be cached per role fingerprint
+     * @param maxEntries Upper bound on cached role fingerprints
+     * @param meterRegistry Registry receiving the conversion timer
      * @return A JwtAuthenticationConverter configured with the KeycloakRoleConverter
      */
     @Bean
-    public JwtAuthenticationConverter jwtAuthenticationConverter() {
+    public JwtAuthenticationConverter jwtAuthenticationConverter(
+            @Value("${security.jwt.authority-cache.enabled:true}") boolean memoizeAuthorities,
+            @Value("${security.jwt.authority-cache.max-entries:1024}") int maxEntries,
+            MeterRegistry meterRegistry) {
+        KeycloakRoleConverter roleConverter = new KeycloakRoleConverter(memoizeAuthorities, maxEntries);
+        Timer conversions = Timer.builder("security.jwt.authorities")
+                .description("Mapping of Keycloak roles to granted authorities")
+                .register(meterRegistry);
+
         JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
-        converter.setJwtGrantedAuthoritiesConverter(new KeycloakRoleConverter());
+        converter.setJwtGrantedAuthoritiesConverter(jwt -> conversions.record(() -> roleConverter.convert(jwt)));
         return converter;
     }
 
@@ -102,11 +487,44 @@ public class SecurityConfig {
      *
      * This converter handles both realm roles and client-specific roles from Keycloak,
      * prefixing them with "ROLE_" to match Spring Security's role-based authorization model.
+     *
+     * When memoization is enabled the converter keeps the resulting immutable authority
+     * collection keyed on a fingerprint of the role-bearing claims (scope, realm_access and
+     * resource_access), and hands out interned authority instances. Tokens of users with the
+     * same roles then share one collection instead of re-walking the claims on every request.
      */
     static class KeycloakRoleConverter implements Converter<Jwt, Collection<GrantedAuthority>> {
         private final JwtGrantedAuthoritiesConverter defaultConverter = new JwtGrantedAuthoritiesConverter();
         private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(KeycloakRoleConverter.class);
 
+        private final boolean memoize;
+        private final int maxEntries;
+
+        // Authority collections already computed, keyed on the claims they were derived from
+        private final Map<RoleClaims, Collection<GrantedAuthority>> authorityCache = new ConcurrentHashMap<>();
+
+        // One shared authority instance per authority name
+        private final Map<String, GrantedAuthority> internedAuthorities = new ConcurrentHashMap<>();
+
+        /**
+         * Creates a converter that maps every token from scratch.
+         */
+        KeycloakRoleConverter() {
+            this(false, 0);
+        }
+
+        /**
+         * Creates a converter with optional memoization.
+         *
+         * @param memoize Whether computed authority collections should be cached and reused
+         * @param maxEntries Upper bound on cached role fingerprints and interned authorities;
+         *                   the caches are reset once it is reached
+         */
+        KeycloakRoleConverter(boolean memoize, int maxEntries) {
+            this.memoize = memoize;
+            this.maxEntries = maxEntries;
+        }
+
         /**
          * Converts JWT claims to a collection of GrantedAuthority objects.
          * Extracts roles from both realm_access and resource_access claims in the Keycloak JWT.
@@ -116,14 +534,42 @@ public class SecurityConfig {
          */
         @Override
         public Collection<GrantedAuthority> convert(Jwt jwt) {
+            if (!memoize) {
+                return extractAuthorities(jwt, SimpleGrantedAuthority::new);
+            }
+
+            RoleClaims fingerprint = RoleClaims.of(jwt);
+            Collection<GrantedAuthority> cached = authorityCache.get(fingerprint);
+            if (cached != null) {
+                return cached;
+            }
+
+            Collection<GrantedAuthority> authorities = List.copyOf(extractAuthorities(jwt, this::intern));
+            if (authorityCache.size() >= maxEntries) {
+                // Role combinations are low-cardinality; hitting the bound means something unusual,
+                // so start over rather than pay for LRU bookkeeping on every request
+                authorityCache.clear();
+            }
+            authorityCache.putIfAbsent(fingerprint, authorities);
+            return authorities;
+        }
+
+        /**
+         * Walks the token claims and builds the authority collection.
+         *
+         * @param jwt The JWT token to extract authorities from
+         * @param authorityFactory Creates (or looks up) the authority for a given name
+         * @return The mapped authorities, without duplicates, in claim order
+         */
+        private Collection<GrantedAuthority> extractAuthorities(Jwt jwt, Function<String, GrantedAuthority> authorityFactory) {
             // Get default authorities using the standard converter
-            Collection<GrantedAuthority> authorities = defaultConverter.convert(jwt);
+            Collection<GrantedAuthority> authorities = new LinkedHashSet<>();
+            for (GrantedAuthority authority : defaultConverter.convert(jwt)) {
+                authorities.add(authorityFactory.apply(authority.getAuthority()));
+            }
 
-            // Log JWT claims and default authorities for debugging
-            log.debug("JWT claims: {}", jwt.getClaims());
+            // Log default authorities for debugging; the claims themselves are personal data and stay out of the logs
             log.debug("Default authorities: {}", authorities);
-            System.out.println("JWT claims: " + jwt.getClaims());
-            System.out.println("Default authorities: " + authorities);
 
             // Extract realm roles from the JWT token's realm_access claim
             Map<String, Object> realmAccess = jwt.getClaimAsMap("realm_access");
@@ -133,7 +579,7 @@ public class SecurityConfig {
                 log.debug("Realm roles: {}", roles);
                 roles.forEach(role -> {
                     // Convert each role to an authority with the "ROLE_" prefix
-                    SimpleGrantedAuthority authority = new SimpleGrantedAuthority("ROLE_" + role.toUpperCase());
+                    GrantedAuthority authority = authorityFactory.apply("ROLE_" + role.toUpperCase());
                     log.debug("Adding realm authority: {}", authority);
                     authorities.add(authority);
                 });
@@ -147,6 +593,7 @@ public class SecurityConfig {
                 log.debug("Resource access: {}", resourceAccess);
                 resourceAccess.forEach((clientId, clientAccess) -> {
                     if (clientAccess instanceof Map) {
+                        @SuppressWarnings("unchecked")
                         Map<String, Object> clientAccessMap = (Map<String, Object>) clientAccess;
                         if (clientAccessMap.containsKey("roles")) {
                             @SuppressWarnings("unchecked")
@@ -154,7 +601,7 @@ public class SecurityConfig {
                             log.debug("Client '{}' roles: {}", clientId, roles);
                             roles.forEach(role -> {
                                 // Convert each client role to an authority with the "ROLE_" prefix
-                                SimpleGrantedAuthority authority = new SimpleGrantedAuthority("ROLE_" + role.toUpperCase());
+                                GrantedAuthority authority = authorityFactory.apply("ROLE_" + role.toUpperCase());
                                 log.debug("Adding client authority: {}", authority);
                                 authorities.add(authority);
                             });
@@ -169,5 +616,35 @@ public class SecurityConfig {
             log.debug("Final authorities: {}", authorities);
             return authorities;
         }
+
+        /**
+         * Returns the shared authority instance for the given name.
+         */
+        private GrantedAuthority intern(String authority) {
+            GrantedAuthority interned = internedAuthorities.get(authority);
+            if (interned != null) {
+                return interned;
+            }
+            if (internedAuthorities.size() >= maxEntries) {
+                internedAuthorities.clear();
+            }
+            return internedAuthorities.computeIfAbsent(authority, SimpleGrantedAuthority::new);
+        }
+
+        /**
+         * Fingerprint of the claims that authorities are derived from. Claim values are
+         * compared structurally, so two tokens carrying the same roles map to the same key.
+         */
+        record RoleClaims(Object scope, Object scp, Object realmAccess, Object resourceAccess) {
+
+            static RoleClaims of(Jwt jwt) {
+                return new RoleClaims(
+                        jwt.getClaim("scope"),
+                        jwt.getClaim("scp"),
+                        jwt.getClaim("realm_access"),
+                        jwt.getClaim("resource_access")
+                );
+            }
+        }
     }
 }
\ No newline at end of file
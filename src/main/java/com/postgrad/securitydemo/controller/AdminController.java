@@ -1,12 +1,23 @@
 package com.postgrad.securitydemo.controller;
 
+import com.postgrad.securitydemo.cache.CacheRegionStats;
+import com.postgrad.securitydemo.cache.ResourceReadCache;
+import com.postgrad.securitydemo.cache.UserCacheStats;
+import com.postgrad.securitydemo.config.CachingJwtDecoder;
+import com.postgrad.securitydemo.security.PolicyRegistry;
 import com.postgrad.securitydemo.service.KeycloakUserService;
+import com.postgrad.securitydemo.service.UserSyncResult;
 import lombok.RequiredArgsConstructor;
-import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.web.bind.annotation.*;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.RuntimeMXBean;
+import java.time.Instant;
 import java.util.List;
 import java.util.Map;
 
@@ -17,15 +28,23 @@ import java.util.Map;
 public class AdminController {
 
     private final KeycloakUserService keycloakUserService;
+    private final JwtDecoder jwtDecoder;
+    private final PolicyRegistry policyRegistry;
+    private final ResourceReadCache resourceReadCache;
 
     @GetMapping("/users/sync")
-    public ResponseEntity<Map<String, Object>> synchronizeUsers() {
-        List<UserRepresentation> users = keycloakUserService.syncAllUsers();
+    public ResponseEntity<Map<String, Object>> synchronizeUsers(@RequestParam(defaultValue = "false") boolean full) {
+        UserSyncResult result = keycloakUserService.syncAllUsers(full);
 
         return ResponseEntity.ok(Map.of(
-                "success", true,
-                "message", "Users synchronized successfully",
-                "count", users.size()
+                "success", result.completed(),
+                "message", result.completed() ? "Users synchronized successfully" : "User synchronization incomplete",
+                "count", result.fetched(),
+                "pages", result.pages(),
+                "changed", result.changed(),
+                "unchanged", result.unchanged(),
+                "removed", result.removed(),
+                "elapsedMillis", result.elapsedMillis()
         ));
     }
 
@@ -39,6 +58,11 @@ public class AdminController {
         ));
     }
 
+    @GetMapping("/users/cache/stats")
+    public ResponseEntity<UserCacheStats> getUserCacheStats() {
+        return ResponseEntity.ok(keycloakUserService.getCacheStats());
+    }
+
     @DeleteMapping("/users/cache/{userId}")
     public ResponseEntity<Map<String, Object>> clearSpecificUserCache(@PathVariable String userId) {
         keycloakUserService.clearUserCache(userId);
@@ -49,16 +73,80 @@ public class AdminController {
         ));
     }
 
+    @GetMapping("/resources/cache/stats")
+    public ResponseEntity<Map<String, CacheRegionStats>> getResourceCacheStats() {
+        return ResponseEntity.ok(resourceReadCache.stats());
+    }
+
+    @DeleteMapping("/resources/cache")
+    public ResponseEntity<Map<String, Object>> clearResourceCache() {
+        resourceReadCache.invalidateAll();
+
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "message", "Resource cache cleared successfully"
+        ));
+    }
+
+    @GetMapping("/security/jwt-cache")
+    public ResponseEntity<Map<String, Object>> getJwtCacheStats() {
+        if (!(jwtDecoder instanceof CachingJwtDecoder cachingDecoder)) {
+            return ResponseEntity.ok(Map.of("enabled", false));
+        }
+
+        return ResponseEntity.ok(Map.of(
+                "enabled", true,
+                "hits", cachingDecoder.hitCount(),
+                "misses", cachingDecoder.missCount(),
+                "size", cachingDecoder.size()
+        ));
+    }
+
+    @DeleteMapping("/security/jwt-cache")
+    public ResponseEntity<Map<String, Object>> clearJwtCache() {
+        if (jwtDecoder instanceof CachingJwtDecoder cachingDecoder) {
+            cachingDecoder.invalidateAll();
+        }
+
+        return ResponseEntity.ok(Map.of(
+                "success", true,
+                "message", "JWT cache cleared successfully"
+        ));
+    }
+
+    @GetMapping("/security/policies")
+    public ResponseEntity<List<PolicyRegistry.PolicyStats>> getPolicyStats() {
+        return ResponseEntity.ok(policyRegistry.stats());
+    }
+
     @GetMapping("/system/info")
     public ResponseEntity<Map<String, Object>> getSystemInfo() {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        MemoryUsage heap = memory.getHeapMemoryUsage();
+        MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+        List<Map<String, Object>> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .map(collector -> Map.<String, Object>of(
+                        "name", collector.getName(),
+                        "collections", collector.getCollectionCount(),
+                        "timeMillis", collector.getCollectionTime()))
+                .toList();
+
         return ResponseEntity.ok(Map.of(
-                "uptime", System.currentTimeMillis(),
+                "uptimeMillis", runtime.getUptime(),
+                "startTime", Instant.ofEpochMilli(runtime.getStartTime()).toString(),
                 "javaVersion", System.getProperty("java.version"),
-                "memory", Map.of(
-                        "free", Runtime.getRuntime().freeMemory(),
-                        "total", Runtime.getRuntime().totalMemory(),
-                        "max", Runtime.getRuntime().maxMemory()
+                "heap", Map.of(
+                        "used", heap.getUsed(),
+                        "committed", heap.getCommitted(),
+                        "max", heap.getMax()
+                ),
+                "nonHeap", Map.of(
+                        "used", nonHeap.getUsed(),
+                        "committed", nonHeap.getCommitted()
                 ),
+                "gc", garbageCollectors,
+                "threads", ManagementFactory.getThreadMXBean().getThreadCount(),
                 "processors", Runtime.getRuntime().availableProcessors()
         ));
     }
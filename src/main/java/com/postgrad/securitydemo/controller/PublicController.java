@@ -1,14 +1,17 @@
 package com.postgrad.securitydemo.controller;
 
-import com.postgrad.securitydemo.model.Resource;
+import com.postgrad.securitydemo.dto.CursorPage;
+import com.postgrad.securitydemo.dto.ResourceSummary;
 import com.postgrad.securitydemo.service.ResourceService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -19,8 +22,11 @@ public class PublicController {
     private final ResourceService resourceService;
 
     @GetMapping("/resources")
-    public ResponseEntity<List<Resource>> getPublicResources() {
-        return ResponseEntity.ok(resourceService.getPublicResources());
+    public ResponseEntity<CursorPage<ResourceSummary>> getPublicResources(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + ResourceService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return ResourceETags.listing(resourceService.getPublicResources(cursor, limit), ifNoneMatch);
     }
 
     @GetMapping("/health")
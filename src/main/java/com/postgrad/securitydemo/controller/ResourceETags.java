@@ -0,0 +1,101 @@
+package com.postgrad.securitydemo.controller;
+
+import com.postgrad.securitydemo.dto.CursorPage;
+import com.postgrad.securitydemo.dto.ResourceSummary;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.function.Function;
+
+/**
+ * Strong ETags for resources and resource listings, and parsing of conditional request headers.
+ *
+ * A single resource is tagged with its version. A listing page is tagged with a hash of the
+ * (id, version) pairs it contains and its next cursor, so it changes whenever a row on the
+ * page is added, removed or modified.
+ */
+final class ResourceETags {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private ResourceETags() {
+    }
+
+    static String of(Long version) {
+        return "\"v" + (version != null ? version : 0L) + "\"";
+    }
+
+    static <T> String ofPage(CursorPage<T> page, Function<T, Long> idOf, Function<T, Long> versionOf) {
+        long hash = FNV_OFFSET_BASIS;
+        for (T item : page.items()) {
+            hash = mix(hash, idOf.apply(item));
+            hash = mix(hash, versionOf.apply(item));
+        }
+        hash = mix(hash, page.nextCursor());
+        return "\"p" + Long.toHexString(hash) + "\"";
+    }
+
+    /**
+     * A listing page response carrying its ETag, or 304 if the client already has this page
+     */
+    static ResponseEntity<CursorPage<ResourceSummary>> listing(CursorPage<ResourceSummary> page, String ifNoneMatch) {
+        String etag = ofPage(page, ResourceSummary::id, ResourceSummary::version);
+        if (matchesIfNoneMatch(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(page);
+    }
+
+    /**
+     * Whether an If-None-Match header matches the current ETag (weak comparison, as RFC 9110
+     * requires for If-None-Match)
+     */
+    static boolean matchesIfNoneMatch(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isWildcard(String ifMatch) {
+        return ifMatch.trim().equals("*");
+    }
+
+    /**
+     * The version named by a single-resource ETag in an If-Match header, or null if the header
+     * is not a single strong ETag produced by {@link #of(Long)}
+     */
+    static Long versionOf(String ifMatch) {
+        String tag = ifMatch.trim();
+        if (tag.length() < 4 || !tag.startsWith("\"v") || !tag.endsWith("\"")) {
+            return null;
+        }
+        try {
+            return Long.parseLong(tag.substring(2, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static long mix(long hash, Long value) {
+        long v = value != null ? value : -1L;
+        for (int i = 0; i < Long.BYTES; i++) {
+            hash ^= (v >>> (i * 8)) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
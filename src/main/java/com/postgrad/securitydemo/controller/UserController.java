@@ -1,15 +1,32 @@
 package com.postgrad.securitydemo.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.postgrad.securitydemo.dto.BulkItemResult;
+import com.postgrad.securitydemo.dto.CursorPage;
+import com.postgrad.securitydemo.dto.ResourceSummary;
+import com.postgrad.securitydemo.dto.ResourceVersion;
 import com.postgrad.securitydemo.model.Resource;
 import com.postgrad.securitydemo.service.KeycloakUserService;
 import com.postgrad.securitydemo.service.ResourceService;
 import lombok.RequiredArgsConstructor;
 import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -21,32 +38,119 @@ public class UserController {
 
     private final ResourceService resourceService;
     private final KeycloakUserService keycloakUserService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${keycloak.batch.max-ids:200}")
+    private int maxBatchSize;
+
+    @Value("${resources.bulk.max-items:10000}")
+    private int maxBulkItems;
 
     @GetMapping("/resources")
-    public ResponseEntity<List<Resource>> getUserResources() {
-        return ResponseEntity.ok(resourceService.getMyResources());
+    public ResponseEntity<CursorPage<ResourceSummary>> getUserResources(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + ResourceService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return ResourceETags.listing(resourceService.getMyResources(cursor, limit), ifNoneMatch);
     }
 
     @GetMapping("/resources/all")
-    public ResponseEntity<List<Resource>> getAllResources() {
-        return ResponseEntity.ok(resourceService.getAllResources());
+    public ResponseEntity<CursorPage<ResourceSummary>> getAllResources(
+            @RequestParam(required = false) Long cursor,
+            @RequestParam(defaultValue = "" + ResourceService.DEFAULT_PAGE_SIZE) int limit,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            // Revalidate with IDs and versions only; the page is loaded only if it changed
+            String etag = ResourceETags.ofPage(resourceService.getAllResourceVersions(cursor, limit),
+                    ResourceVersion::id, ResourceVersion::version);
+            if (ResourceETags.matchesIfNoneMatch(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
+        return ResourceETags.listing(resourceService.getAllResources(cursor, limit), null);
+    }
+
+    /**
+     * Export all resources as NDJSON (one JSON object per line). Rows are written while
+     * they are read from the database, so the response starts immediately and memory
+     * use does not depend on the number of resources.
+     */
+    @GetMapping(value = "/resources/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportResources() {
+        ObjectWriter writer = objectMapper.writerFor(ResourceSummary.class);
+
+        StreamingResponseBody body = outputStream -> {
+            BufferedOutputStream out = new BufferedOutputStream(outputStream, 64 * 1024);
+            long[] written = {0};
+            resourceService.exportResources(resource -> {
+                try {
+                    out.write(writer.writeValueAsBytes(resource));
+                    out.write('\n');
+                    // Push the first row out straight away, then let the buffer decide
+                    if (++written[0] == 1) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
     }
 
     @GetMapping("/resources/{id}")
-    public ResponseEntity<Resource> getResourceById(@PathVariable Long id) {
+    public ResponseEntity<Resource> getResourceById(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        if (ifNoneMatch != null) {
+            Optional<ResourceVersion> version = resourceService.getResourceVersion(id);
+            if (version.isEmpty()) {
+                return ResponseEntity.notFound().build();
+            }
+            String etag = ResourceETags.of(version.get().version());
+            if (ResourceETags.matchesIfNoneMatch(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
         Optional<Resource> resource = resourceService.getResourceById(id);
-        return resource.map(ResponseEntity::ok)
+        return resource.map(r -> ResponseEntity.ok().eTag(ResourceETags.of(r.getVersion())).body(r))
                 .orElse(ResponseEntity.notFound().build());
     }
 
     @PostMapping("/resources")
     public ResponseEntity<Resource> createResource(@RequestBody Resource resource) {
-        return ResponseEntity.ok(resourceService.createResource(resource));
+        Resource created = resourceService.createResource(resource);
+        return ResponseEntity.ok().eTag(ResourceETags.of(created.getVersion())).body(created);
     }
 
+    /**
+     * Update a resource. With If-Match (the ETag from a previous read) the update only happens
+     * if the resource has not changed since; otherwise 412 is returned. Without If-Match, an
+     * update racing with another one is answered with 409.
+     */
     @PutMapping("/resources/{id}")
-    public ResponseEntity<Resource> updateResource(@PathVariable Long id, @RequestBody Resource resource) {
-        return ResponseEntity.ok(resourceService.updateResource(id, resource));
+    public ResponseEntity<Resource> updateResource(
+            @PathVariable Long id,
+            @RequestBody Resource resource,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        Long expectedVersion = null;
+        if (ifMatch != null && !ResourceETags.isWildcard(ifMatch)) {
+            expectedVersion = ResourceETags.versionOf(ifMatch);
+            if (expectedVersion == null) {
+                // Not an ETag this server issued for a resource, so it cannot match
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+        }
+
+        try {
+            Resource updated = resourceService.updateResource(id, resource, expectedVersion);
+            return ResponseEntity.ok().eTag(ResourceETags.of(updated.getVersion())).body(updated);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT).build();
+        }
     }
 
     @DeleteMapping("/resources/{id}")
@@ -55,6 +159,59 @@ public class UserController {
         return ResponseEntity.noContent().build();
     }
 
+    @PostMapping("/resources/bulk")
+    public ResponseEntity<List<BulkItemResult>> createResources(@RequestBody List<Resource> resources) {
+        if (resources.size() > maxBulkItems) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(resourceService.createResources(resources));
+    }
+
+    @PutMapping("/resources/bulk")
+    public ResponseEntity<List<BulkItemResult>> updateResources(@RequestBody List<Resource> resources) {
+        if (resources.size() > maxBulkItems) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(resourceService.updateResources(resources));
+    }
+
+    @PostMapping("/resources/bulk/delete")
+    public ResponseEntity<List<BulkItemResult>> deleteResources(@RequestBody List<Long> ids) {
+        if (ids.size() > maxBulkItems) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(resourceService.deleteResources(ids));
+    }
+
+    /**
+     * Look up many users at once, for example the owners shown on a resource listing. Only the
+     * public profile is returned; the email address is included for admins and for the caller's
+     * own ID.
+     */
+    @PostMapping("/users/batch")
+    public ResponseEntity<Map<String, Map<String, Object>>> getUsers(@RequestBody List<String> userIds) {
+        if (userIds.size() > maxBatchSize || userIds.stream().anyMatch(id -> id == null || id.isBlank())) {
+            return ResponseEntity.badRequest().build();
+        }
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        boolean admin = isAdmin(auth);
+
+        Map<String, Map<String, Object>> users = new LinkedHashMap<>();
+        keycloakUserService.getUsersInfo(userIds).forEach((userId, userRep) -> {
+            // Values may be null, so no Map.of
+            Map<String, Object> user = new LinkedHashMap<>();
+            user.put("id", userRep.getId());
+            user.put("username", userRep.getUsername());
+            user.put("firstName", userRep.getFirstName());
+            user.put("lastName", userRep.getLastName());
+            if (admin || userId.equals(auth.getName())) {
+                user.put("email", userRep.getEmail());
+            }
+            users.put(userId, user);
+        });
+        return ResponseEntity.ok(users);
+    }
+
     @GetMapping("/profile")
     public ResponseEntity<Map<String, Object>> getUserProfile() {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
@@ -80,4 +237,13 @@ public class UserController {
             ));
         }
     }
+
+    private static boolean isAdmin(Authentication authentication) {
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if ("ROLE_ADMIN".equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
@@ -0,0 +1,24 @@
+package com.postgrad.securitydemo.dto;
+
+/**
+ * Outcome of one item in a bulk request. Results are returned in request order.
+ *
+ * @param index Position of the item in the request
+ * @param id ID of the resource the item refers to (assigned ID for created items), if known
+ * @param status What happened to the item
+ */
+public record BulkItemResult(int index, Long id, Status status) {
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        DELETED,
+        // The caller may not modify this resource
+        FORBIDDEN,
+        NOT_FOUND,
+        // The item carried a version that no longer matches the stored resource
+        CONFLICT,
+        // The item itself is malformed, e.g. an update without an ID
+        INVALID
+    }
+}
@@ -0,0 +1,34 @@
+package com.postgrad.securitydemo.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * One page of a keyset-paginated listing. Pages are cached and shared across requests, so the
+ * items are copied into an immutable list.
+ *
+ * @param items The rows on this page, in ascending ID order
+ * @param nextCursor Value to pass as cursor to get the next page, or null on the last page
+ */
+public record CursorPage<T>(List<T> items, Long nextCursor) {
+
+    public CursorPage {
+        items = List.copyOf(items);
+    }
+
+    /**
+     * Builds a page from a query that fetched one row more than the page size;
+     * the extra row only signals that there is a next page.
+     *
+     * @param rows Up to limit + 1 rows, ordered by ID
+     * @param limit The page size
+     * @param idOf Extracts the keyset ID of a row
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int limit, Function<T, Long> idOf) {
+        if (rows.size() <= limit) {
+            return new CursorPage<>(rows, null);
+        }
+        List<T> items = rows.subList(0, limit);
+        return new CursorPage<>(items, idOf.apply(items.get(limit - 1)));
+    }
+}
@@ -0,0 +1,10 @@
+package com.postgrad.securitydemo.dto;
+
+/**
+ * Read-only view of a resource for listings. Queries select these directly, so list
+ * traffic never creates managed entities that Hibernate would have to track.
+ * Serializes to the same JSON as {@link com.postgrad.securitydemo.model.Resource}.
+ */
+public record ResourceSummary(Long id, String name, String description, String owner,
+                              boolean publicResource, String requiredRole, Long version) {
+}
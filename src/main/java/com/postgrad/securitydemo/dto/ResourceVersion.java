@@ -0,0 +1,8 @@
+package com.postgrad.securitydemo.dto;
+
+/**
+ * The minimum needed to answer a conditional request for a resource: its version for the
+ * ETag, plus owner and visibility for the read check.
+ */
+public record ResourceVersion(Long id, Long version, String owner, boolean publicResource) {
+}
@@ -0,0 +1,66 @@
+package com.postgrad.securitydemo.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.PostLoad;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.Transient;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+import org.springframework.data.domain.Persistable;
+
+import java.time.Instant;
+
+/**
+ * A named lease held by at most one node until it expires, e.g. the right to run the user sync.
+ */
+@Entity
+@Getter
+@ToString
+@NoArgsConstructor
+public class ClusterLease implements Persistable<String> {
+
+    @Id
+    private String name;
+
+    // Node holding the lease; null if it was never taken or has been released
+    private String owner;
+
+    private Instant expiresAt;
+
+    // The ID is assigned, so without this save() would merge over a row another node just inserted
+    @Transient
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    private boolean created;
+
+    /**
+     * A lease that nobody has taken yet, to be inserted. Saving it fails with a
+     * DataIntegrityViolationException if the row already exists.
+     */
+    public static ClusterLease unowned(String name) {
+        ClusterLease lease = new ClusterLease();
+        lease.name = name;
+        lease.expiresAt = Instant.EPOCH;
+        lease.created = true;
+        return lease;
+    }
+
+    @Override
+    public String getId() {
+        return name;
+    }
+
+    @Override
+    public boolean isNew() {
+        return created;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markStored() {
+        created = false;
+    }
+}
@@ -0,0 +1,75 @@
+package com.postgrad.securitydemo.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Lob;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.Instant;
+
+/**
+ * One entry of the cluster-wide user cache invalidation log.
+ *
+ * Every node appends an entry when it changes its user cache in a way the other nodes must
+ * follow, and polls the log for entries written by others.
+ */
+@Entity
+// Old entries are purged by age
+@Table(indexes = @Index(name = "idx_user_cache_invalidation_created_at", columnList = "created_at"))
+@Getter
+@ToString(exclude = "payload")
+@NoArgsConstructor
+public class UserCacheInvalidation {
+
+    public enum Kind {
+        // The user's cache entry is stale; reload it on next use
+        INVALIDATE,
+        // Drop every cached user
+        INVALIDATE_ALL,
+        // The user changed; the payload holds its new representation
+        UPDATE,
+        // The user no longer exists in Keycloak
+        REMOVE
+    }
+
+    // Allocated one at a time, so IDs follow insertion order closely enough to poll by
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "user_cache_invalidation_seq")
+    @SequenceGenerator(name = "user_cache_invalidation_seq", sequenceName = "user_cache_invalidation_seq", allocationSize = 1)
+    private Long id;
+
+    // Node that wrote the entry
+    @Column(nullable = false, length = 128)
+    private String origin;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Kind kind;
+
+    private String userId;
+
+    // JSON user representation, for UPDATE entries
+    @Lob
+    private String payload;
+
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    public UserCacheInvalidation(String origin, Kind kind, String userId, String payload, Instant createdAt) {
+        this.origin = origin;
+        this.kind = kind;
+        this.userId = userId;
+        this.payload = payload;
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,31 @@
+package com.postgrad.securitydemo.repository;
+
+import com.postgrad.securitydemo.model.ClusterLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+// Query methods declared here run in read-only transactions unless they say otherwise
+@Repository
+@Transactional(readOnly = true)
+public interface ClusterLeaseRepository extends JpaRepository<ClusterLease, String> {
+
+    // Single-statement compare-and-set: the database decides which node gets an expired lease
+
+    @Transactional
+    @Modifying
+    @Query("update ClusterLease l set l.owner = :owner, l.expiresAt = :expiresAt " +
+            "where l.name = :name and (l.owner = :owner or l.owner is null or l.expiresAt < :now)")
+    int tryTake(@Param("name") String name, @Param("owner") String owner, @Param("now") Instant now,
+                @Param("expiresAt") Instant expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("update ClusterLease l set l.owner = null where l.name = :name and l.owner = :owner")
+    int release(@Param("name") String name, @Param("owner") String owner);
+}
@@ -1,17 +1,69 @@
 package com.postgrad.securitydemo.repository;
 
+import com.postgrad.securitydemo.dto.ResourceSummary;
+import com.postgrad.securitydemo.dto.ResourceVersion;
 import com.postgrad.securitydemo.model.Resource;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+// Query methods declared here run in read-only transactions unless they say otherwise
 @Repository
+@Transactional(readOnly = true)
 public interface ResourceRepository extends JpaRepository<Resource, Long> {
 
-    List<Resource> findByPublicResourceTrue();
+    // Listings return ResourceSummary projections, not managed entities
 
-    List<Resource> findByOwner(String owner);
+    List<ResourceSummary> findByPublicResourceTrue();
 
-    List<Resource> findByRequiredRole(String requiredRole);
+    List<ResourceSummary> findByOwner(String owner);
+
+    List<ResourceSummary> findByRequiredRole(String requiredRole);
+
+    // Keyset pagination: rows after the given ID, in ID order
+
+    List<ResourceSummary> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    List<ResourceSummary> findByPublicResourceTrueAndIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    List<ResourceSummary> findByOwnerAndIdGreaterThanOrderByIdAsc(String owner, Long id, Limit limit);
+
+    // Cursor-backed stream over all resources for bulk export; must be consumed inside a transaction
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"))
+    @Query("select new com.postgrad.securitydemo.dto.ResourceSummary(r.id, r.name, r.description, r.owner, " +
+            "r.publicResource, r.requiredRole, r.version) from Resource r order by r.id")
+    Stream<ResourceSummary> streamAllOrderedById();
+
+    // Version lookups for conditional requests
+
+    Optional<ResourceVersion> findVersionById(Long id);
+
+    List<ResourceVersion> findVersionsByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    // Single-statement writes for rows the caller has already loaded (no select-before-write)
+
+    @Transactional
+    @Modifying
+    @Query("update Resource r set r.name = :name, r.description = :description, " +
+            "r.publicResource = :publicResource, r.requiredRole = :requiredRole, r.version = r.version + 1 " +
+            "where r.id = :id and r.version = :version")
+    int updateContent(@Param("id") Long id, @Param("version") Long version, @Param("name") String name,
+                      @Param("description") String description, @Param("publicResource") boolean publicResource,
+                      @Param("requiredRole") String requiredRole);
+
+    @Transactional
+    @Modifying
+    @Query("delete from Resource r where r.id = :id")
+    int deleteDirectlyById(@Param("id") Long id);
 }
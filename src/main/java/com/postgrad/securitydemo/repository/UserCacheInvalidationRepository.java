@@ -0,0 +1,33 @@
+package com.postgrad.securitydemo.repository;
+
+import com.postgrad.securitydemo.model.UserCacheInvalidation;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+// Query methods declared here run in read-only transactions unless they say otherwise
+@Repository
+@Transactional(readOnly = true)
+public interface UserCacheInvalidationRepository extends JpaRepository<UserCacheInvalidation, Long> {
+
+    // Polling: entries after the given ID, in ID order
+    List<UserCacheInvalidation> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    @Query("select coalesce(max(i.id), 0) from UserCacheInvalidation i")
+    long findMaxId();
+
+    @Query("select coalesce(max(i.id), 0) from UserCacheInvalidation i where i.createdAt < :before")
+    long findMaxIdCreatedBefore(@Param("before") Instant before);
+
+    @Transactional
+    @Modifying
+    @Query("delete from UserCacheInvalidation i where i.createdAt < :before")
+    int deleteCreatedBefore(@Param("before") Instant before);
+}
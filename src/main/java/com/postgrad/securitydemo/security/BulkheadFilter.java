@@ -0,0 +1,169 @@
+package com.postgrad.securitydemo.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps how many expensive requests run at the same time, independent of who sends them.
+ *
+ * Each compartment is a semaphore over a set of path patterns. A request that cannot get a
+ * permit within the compartment's maximum wait (by default not at all) is answered with
+ * {@code 503 Service Unavailable} and a {@code Retry-After} header, instead of tying up a
+ * server thread and a database connection behind the operation already running. Runs after
+ * authorization, so only requests that would be served take a permit. Permits are held for
+ * the synchronous part of the request only, so compartments should cover synchronous endpoints.
+ */
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    private final List<Compartment> compartments;
+
+    private BulkheadFilter(List<Compartment> compartments) {
+        this.compartments = List.copyOf(compartments);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public List<Compartment> compartments() {
+        return compartments;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        Compartment compartment = compartment(UrlPathHelper.defaultInstance.getPathWithinApplication(request));
+        if (compartment == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        boolean acquired;
+        try {
+            acquired = compartment.permits.tryAcquire(compartment.maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            compartment.rejected.increment();
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(compartment.retryAfterSeconds));
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            compartment.permits.release();
+        }
+    }
+
+    private Compartment compartment(String path) {
+        PathContainer container = PathContainer.parsePath(path);
+        for (Compartment compartment : compartments) {
+            for (PathPattern pattern : compartment.patterns) {
+                if (pattern.matches(container)) {
+                    return compartment;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A group of endpoints sharing a concurrency limit.
+     */
+    public static final class Compartment {
+
+        private final String name;
+        private final int maxConcurrent;
+        private final long maxWaitNanos;
+        private final long retryAfterSeconds;
+        private final List<PathPattern> patterns;
+        private final Semaphore permits;
+        private final LongAdder rejected = new LongAdder();
+
+        private Compartment(String name, int maxConcurrent, Duration maxWait, Duration retryAfter,
+                            List<PathPattern> patterns) {
+            if (maxConcurrent < 1) {
+                throw new IllegalArgumentException("Bulkhead '" + name + "' must allow at least one request");
+            }
+            this.name = name;
+            this.maxConcurrent = maxConcurrent;
+            this.maxWaitNanos = maxWait.toNanos();
+            this.retryAfterSeconds = Math.max(1, retryAfter.toSeconds());
+            this.patterns = patterns;
+            this.permits = new Semaphore(maxConcurrent);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public int maxConcurrent() {
+            return maxConcurrent;
+        }
+
+        /**
+         * @return Requests currently holding a permit
+         */
+        public int active() {
+            return maxConcurrent - permits.availablePermits();
+        }
+
+        /**
+         * @return Requests turned away since startup
+         */
+        public long rejected() {
+            return rejected.sum();
+        }
+    }
+
+    /**
+     * Collects compartments; a path belongs to the first compartment that matches it.
+     */
+    public static final class Builder {
+
+        private final List<Compartment> compartments = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a compartment, e.g. {@code compartment("admin-sync", 1, Duration.ZERO, Duration.ofSeconds(30), "/api/admin/users/sync")}
+         *
+         * @param maxConcurrent Requests allowed to run at the same time
+         * @param maxWait How long a request may wait for a permit
+         * @param retryAfter Value of the Retry-After header on rejection
+         */
+        public Builder compartment(String name, int maxConcurrent, Duration maxWait, Duration retryAfter,
+                                   String... patterns) {
+            List<PathPattern> parsed = new ArrayList<>();
+            for (String pattern : patterns) {
+                parsed.add(PathPatternParser.defaultInstance.parse(pattern));
+            }
+            compartments.add(new Compartment(name, maxConcurrent, maxWait, retryAfter, List.copyOf(parsed)));
+            return this;
+        }
+
+        public BulkheadFilter build() {
+            return new BulkheadFilter(compartments);
+        }
+    }
+}
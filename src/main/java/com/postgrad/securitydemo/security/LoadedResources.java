@@ -0,0 +1,43 @@
+package com.postgrad.securitydemo.security;
+
+import com.postgrad.securitydemo.model.Resource;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Optional;
+
+/**
+ * Request-scoped memory of resources loaded during authorization.
+ *
+ * The permission check for a write has to load the resource to see its owner; the service
+ * method that performs the write can then pick the same instance up instead of reading the
+ * row again. Outside of a web request nothing is remembered and callers load as usual.
+ */
+public final class LoadedResources {
+
+    private static final String ATTRIBUTE_PREFIX = LoadedResources.class.getName() + ".";
+
+    private LoadedResources() {
+    }
+
+    /**
+     * Remember a resource for the rest of the current request
+     */
+    public static void remember(Resource resource) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null && resource.getId() != null) {
+            attributes.setAttribute(ATTRIBUTE_PREFIX + resource.getId(), resource, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    /**
+     * @return The resource loaded earlier in this request, if any
+     */
+    public static Optional<Resource> recall(Long id) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable((Resource) attributes.getAttribute(ATTRIBUTE_PREFIX + id, RequestAttributes.SCOPE_REQUEST));
+    }
+}
@@ -0,0 +1,363 @@
+package com.postgrad.securitydemo.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.web.util.UrlPathHelper;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * URL authorization rules compiled into a prefix trie keyed by path segment.
+ *
+ * Rules are declared in order, exactly like {@code requestMatchers(...)} entries, and the first
+ * rule matching a request decides. Instead of testing every pattern in turn, the patterns are
+ * split into segments at startup: literal segments become trie edges, {@code *} and
+ * {@code {name}} wildcard edges, and a trailing {@code /**} marks a whole subtree. A
+ * lookup walks the trie once along the request path, collects the rules whose pattern matches,
+ * and picks the lowest-ordered one for the request's HTTP method, so its cost depends on the
+ * depth of the path rather than on the number of rules. Patterns with wildcards inside a
+ * segment ({@code *.css}, {@code {id:\d+}}) hang off their literal prefix and are matched with
+ * Spring's {@link PathPattern} when the walk passes them.
+ *
+ * The method-independent result of a lookup is memoized per request path, so repeated paths
+ * skip the walk altogether. Like the other in-memory caches in this application the memo is
+ * reset once it reaches its bound, instead of paying for LRU bookkeeping on every request.
+ *
+ * Paths are matched after decoding, without the context path, as Spring MVC sees them. A
+ * request that matches no rule is denied, unless an {@link Builder#anyRequest any-request}
+ * rule is configured.
+ */
+@Slf4j
+public final class PathDispatchAuthorizationManager implements AuthorizationManager<RequestAuthorizationContext> {
+
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+
+    private static final Rule DENY_ALL = new Rule(Integer.MAX_VALUE, null, "(no match)", new DenyAll());
+
+    private final Node root;
+    private final Rule anyRequest;
+    private final int memoSize;
+
+    // Request path -> rules that apply to it, by HTTP method
+    private final Map<String, Dispatch> memo = new ConcurrentHashMap<>();
+
+    private PathDispatchAuthorizationManager(Node root, Rule anyRequest, int memoSize, int ruleCount) {
+        this.root = root;
+        this.anyRequest = anyRequest;
+        this.memoSize = memoSize;
+        log.info("Compiled {} URL authorization rules into a path trie", ruleCount);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public AuthorizationResult authorize(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        HttpServletRequest request = context.getRequest();
+        Rule rule = dispatch(UrlPathHelper.defaultInstance.getPathWithinApplication(request)).select(request.getMethod());
+        return rule.manager().authorize(authentication, context);
+    }
+
+    /**
+     * @deprecated Still abstract in {@link AuthorizationManager}; use {@link #authorize(Supplier, RequestAuthorizationContext)}
+     */
+    @Override
+    @Deprecated
+    public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+        return toDecision(authorize(authentication, context));
+    }
+
+    private static AuthorizationDecision toDecision(AuthorizationResult result) {
+        if (result == null || result instanceof AuthorizationDecision) {
+            return (AuthorizationDecision) result;
+        }
+        return new AuthorizationDecision(result.isGranted());
+    }
+
+    /**
+     * @return The pattern of the rule that decides requests with the given method and path
+     */
+    public String matchingPattern(String method, String path) {
+        return dispatch(path).select(method).pattern();
+    }
+
+    /**
+     * @return Number of request paths whose lookup result is memoized
+     */
+    public int memoizedPaths() {
+        return memo.size();
+    }
+
+    private Dispatch dispatch(String path) {
+        if (memoSize <= 0) {
+            return resolve(path);
+        }
+        Dispatch dispatch = memo.get(path);
+        if (dispatch == null) {
+            dispatch = resolve(path);
+            if (memo.size() >= memoSize) {
+                // Mostly happens when paths carry IDs; start over rather than track recency
+                memo.clear();
+            }
+            memo.put(path, dispatch);
+        }
+        return dispatch;
+    }
+
+    /**
+     * Walks the trie along the path and combines all matching rules into a per-method table.
+     */
+    private Dispatch resolve(String path) {
+        List<Rule> matches = new ArrayList<>();
+        collect(root, segments(path), 0, path, matches);
+
+        Rule any = anyRequest;
+        for (Rule rule : matches) {
+            if (rule.method() == null && rule.order() < any.order()) {
+                any = rule;
+            }
+        }
+        Map<String, Rule> byMethod = new HashMap<>();
+        for (Rule rule : matches) {
+            // Method-specific rules only matter if they come before the first rule for any method
+            if (rule.method() != null && rule.order() < any.order()) {
+                byMethod.merge(rule.method(), rule, (first, second) -> first.order() <= second.order() ? first : second);
+            }
+        }
+        return new Dispatch(any, Map.copyOf(byMethod));
+    }
+
+    private static void collect(Node node, String[] segments, int depth, String path, List<Rule> matches) {
+        // "prefix/**" matches the prefix itself and everything below it
+        matches.addAll(node.subtree);
+        if (!node.patterns.isEmpty()) {
+            PathContainer container = PathContainer.parsePath(path);
+            for (Rule rule : node.patterns) {
+                if (rule.compiledPattern().matches(container)) {
+                    matches.add(rule);
+                }
+            }
+        }
+        if (depth == segments.length) {
+            matches.addAll(node.exact);
+            return;
+        }
+        String segment = segments[depth];
+        Node literal = node.children.get(segment);
+        if (literal != null) {
+            collect(literal, segments, depth + 1, path, matches);
+        }
+        if (node.variable != null && !segment.isEmpty()) {
+            collect(node.variable, segments, depth + 1, path, matches);
+        }
+        if (node.star != null) {
+            if (!segment.isEmpty()) {
+                collect(node.star, segments, depth + 1, path, matches);
+            } else if (depth == segments.length - 1) {
+                // A trailing "*" also matches the empty segment after a trailing slash
+                matches.addAll(node.star.exact);
+            }
+        }
+    }
+
+    /**
+     * Splits "/a/b/" into ["a", "b", ""]; "/" and "" have no segments.
+     */
+    static String[] segments(String path) {
+        int start = path.startsWith("/") ? 1 : 0;
+        if (start >= path.length()) {
+            return new String[0];
+        }
+        List<String> segments = new ArrayList<>();
+        int end;
+        while ((end = path.indexOf('/', start)) >= 0) {
+            segments.add(path.substring(start, end));
+            start = end + 1;
+        }
+        segments.add(path.substring(start));
+        return segments.toArray(String[]::new);
+    }
+
+    /**
+     * One URL rule.
+     *
+     * @param order Position in declaration order; lower wins
+     * @param method HTTP method the rule is limited to, or null for all methods
+     * @param pattern The path pattern, as declared
+     * @param manager Decides requests matched by this rule
+     * @param compiledPattern Full pattern, for patterns that cannot be expressed in the trie; null otherwise
+     */
+    private record Rule(int order, String method, String pattern,
+                        AuthorizationManager<RequestAuthorizationContext> manager, PathPattern compiledPattern) {
+
+        Rule(int order, String method, String pattern, AuthorizationManager<RequestAuthorizationContext> manager) {
+            this(order, method, pattern, manager, null);
+        }
+    }
+
+    /**
+     * Rules that apply to one request path: the first rule for all methods, plus method-specific
+     * rules declared before it.
+     */
+    private record Dispatch(Rule anyMethod, Map<String, Rule> byMethod) {
+
+        Rule select(String method) {
+            return byMethod.isEmpty() ? anyMethod : byMethod.getOrDefault(method, anyMethod);
+        }
+    }
+
+    /**
+     * Denies every request; the decision for requests no rule matches.
+     */
+    private static final class DenyAll implements AuthorizationManager<RequestAuthorizationContext> {
+
+        @Override
+        public AuthorizationResult authorize(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+            return DENIED;
+        }
+
+        /**
+         * @deprecated Still abstract in {@link AuthorizationManager}; use {@link #authorize(Supplier, RequestAuthorizationContext)}
+         */
+        @Override
+        @Deprecated
+        public AuthorizationDecision check(Supplier<Authentication> authentication, RequestAuthorizationContext context) {
+            return DENIED;
+        }
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node variable;
+        private Node star;
+        private final List<Rule> exact = new ArrayList<>();
+        private final List<Rule> subtree = new ArrayList<>();
+        private final List<Rule> patterns = new ArrayList<>();
+    }
+
+    /**
+     * Collects rules in declaration order.
+     */
+    public static final class Builder {
+
+        private final Node root = new Node();
+        private Rule anyRequest = DENY_ALL;
+        private int memoSize = 4096;
+        private int order;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a rule for all HTTP methods, e.g. {@code rule(hasRole("USER"), "/api/user/**")}
+         */
+        public Builder rule(AuthorizationManager<RequestAuthorizationContext> manager, String... patterns) {
+            return rule(null, manager, patterns);
+        }
+
+        /**
+         * Adds a rule limited to one HTTP method; a null method means all methods
+         */
+        public Builder rule(HttpMethod method, AuthorizationManager<RequestAuthorizationContext> manager,
+                            String... patterns) {
+            for (String pattern : patterns) {
+                add(new Rule(order++, method == null ? null : method.name(), pattern, manager));
+            }
+            return this;
+        }
+
+        /**
+         * Sets the rule for requests that match nothing else; without it they are denied
+         */
+        public Builder anyRequest(AuthorizationManager<RequestAuthorizationContext> manager) {
+            anyRequest = new Rule(Integer.MAX_VALUE, null, "anyRequest", manager);
+            return this;
+        }
+
+        /**
+         * @param memoSize Upper bound on memoized request paths; 0 disables the memo
+         */
+        public Builder memoSize(int memoSize) {
+            this.memoSize = memoSize;
+            return this;
+        }
+
+        public PathDispatchAuthorizationManager build() {
+            return new PathDispatchAuthorizationManager(root, anyRequest, memoSize, order);
+        }
+
+        private void add(Rule rule) {
+            if (!rule.pattern().startsWith("/")) {
+                throw new IllegalArgumentException("URL pattern must start with '/': " + rule.pattern());
+            }
+            String[] segments = segments(rule.pattern());
+            Node node = root;
+            for (int i = 0; i < segments.length; i++) {
+                String segment = segments[i];
+                if (segment.equals("**") && i == segments.length - 1) {
+                    node.subtree.add(rule);
+                    return;
+                }
+                if (segment.equals("*")) {
+                    if (node.star == null) {
+                        node.star = new Node();
+                    }
+                    node = node.star;
+                } else if (isVariable(segment)) {
+                    if (node.variable == null) {
+                        node.variable = new Node();
+                    }
+                    node = node.variable;
+                } else if (isLiteral(segment)) {
+                    node = node.children.computeIfAbsent(segment, s -> new Node());
+                } else {
+                    // Matched as a whole wherever the walk reaches its literal prefix; parsing fails fast on bad patterns
+                    PathPattern compiled = PathPatternParser.defaultInstance.parse(rule.pattern());
+                    node.patterns.add(new Rule(rule.order(), rule.method(), rule.pattern(), rule.manager(), compiled));
+                    return;
+                }
+            }
+            node.exact.add(rule);
+        }
+
+        /**
+         * @return Whether the segment is a plain "{name}" variable, matching any one non-empty segment
+         */
+        private static boolean isVariable(String segment) {
+            if (segment.length() < 3 || segment.charAt(0) != '{' || segment.charAt(segment.length() - 1) != '}') {
+                return false;
+            }
+            for (int i = 1; i < segment.length() - 1; i++) {
+                if (!Character.isLetterOrDigit(segment.charAt(i)) && segment.charAt(i) != '_') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static boolean isLiteral(String segment) {
+            for (int i = 0; i < segment.length(); i++) {
+                char c = segment.charAt(i);
+                if (c == '*' || c == '?' || c == '{' || c == '}') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.postgrad.securitydemo.security;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a method to Java-defined authorization policies (see {@link PolicyDefinition}).
+ *
+ * A pre-policy runs before the method and receives the current authentication followed by
+ * the leading method arguments it declares. A post-policy runs after the method and receives
+ * the authentication and the return value. Policy names are resolved to method handles at
+ * startup, so an unknown name or an incompatible signature fails the application context.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Policy {
+
+    /**
+     * Name of the policy checked before the method runs, or empty for none
+     */
+    String pre() default "";
+
+    /**
+     * Name of the policy checked against the return value, or empty for none
+     */
+    String post() default "";
+}
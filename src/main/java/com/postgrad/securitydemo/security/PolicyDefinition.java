@@ -0,0 +1,26 @@
+package com.postgrad.securitydemo.security;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a bean method as a named authorization policy.
+ *
+ * The method must return {@code boolean} and take an
+ * {@link org.springframework.security.core.Authentication} as its first parameter, followed
+ * by the subject it decides on: the leading arguments of the secured method for a
+ * pre-policy, or its return value for a post-policy.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface PolicyDefinition {
+
+    /**
+     * The policy name referenced from {@link Policy}
+     */
+    String value();
+}
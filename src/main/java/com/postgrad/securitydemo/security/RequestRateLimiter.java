@@ -0,0 +1,259 @@
+package com.postgrad.securitydemo.security;
+
+import org.springframework.http.server.PathContainer;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-principal token buckets, one set per route group.
+ *
+ * Route groups are declared in order like URL rules; a request belongs to the first group
+ * whose pattern matches its path, and requests outside every group are not limited. Each
+ * group allows {@code permits} requests per {@code period} and principal, with bursts of up
+ * to {@code permits}.
+ *
+ * A bucket is a single AtomicLong holding the instant at which it will be full again (the
+ * "theoretical arrival time" of the GCRA formulation of a token bucket). Taking a token is
+ * one compare-and-set, with no lock and no separate refill step. Buckets live in a fixed
+ * number of stripes, each a concurrent map keyed by principal; a stripe is swept of idle
+ * buckets when a request touches it after its sweep interval. A bucket that has been full
+ * for the idle timeout is indistinguishable from a new one, so dropping it loses nothing.
+ */
+public final class RequestRateLimiter {
+
+    private final List<Group> groups;
+    private final Stripe[] stripes;
+    private final long idleNanos;
+    private final LongSupplier nanoClock;
+
+    private RequestRateLimiter(List<Group> groups, int stripes, Duration idleTimeout, LongSupplier nanoClock) {
+        this.groups = List.copyOf(groups);
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, stripes - 1)) << 1];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.idleNanos = idleTimeout.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param path Request path within the application
+     * @return The group the path belongs to, or null if it is not limited
+     */
+    public Group group(String path) {
+        if (groups.isEmpty()) {
+            return null;
+        }
+        PathContainer container = PathContainer.parsePath(path);
+        for (Group group : groups) {
+            for (PathPattern pattern : group.patterns) {
+                if (pattern.matches(container)) {
+                    return group;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Takes a token from the principal's bucket in the given group.
+     *
+     * @param group Group of the request, from {@link #group(String)}
+     * @param principal Key the bucket belongs to
+     * @return 0 if the request may proceed, otherwise the nanoseconds until a token is available
+     */
+    public long tryAcquire(Group group, String principal) {
+        long now = nanoClock.getAsLong();
+        Stripe stripe = stripes[spread(principal.hashCode() ^ group.hashCode()) & (stripes.length - 1)];
+        stripe.sweepIfDue(now, idleNanos);
+
+        Map<String, AtomicLong> buckets = stripe.buckets(group);
+        AtomicLong bucket = buckets.get(principal);
+        if (bucket == null) {
+            AtomicLong created = new AtomicLong(now);
+            bucket = buckets.putIfAbsent(principal, created);
+            if (bucket == null) {
+                bucket = created;
+            }
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            long start = Math.max(fullAt, now);
+            long wait = start - group.burstNanos - now;
+            if (wait > 0) {
+                group.rejected.increment();
+                return wait;
+            }
+            if (bucket.compareAndSet(fullAt, start + group.intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    public List<Group> groups() {
+        return groups;
+    }
+
+    /**
+     * @return Number of buckets currently held, over all groups
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            for (Map<String, AtomicLong> buckets : stripe.buckets.values()) {
+                size += buckets.size();
+            }
+        }
+        return size;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * A route group with its limit.
+     */
+    public static final class Group {
+
+        private final String name;
+        private final int permits;
+        private final Duration period;
+        private final List<PathPattern> patterns;
+        private final long intervalNanos;
+        private final long burstNanos;
+        private final LongAdder rejected = new LongAdder();
+
+        private Group(String name, int permits, Duration period, List<PathPattern> patterns) {
+            if (permits < 1 || period.isNegative() || period.isZero()) {
+                throw new IllegalArgumentException("Rate limit of group '" + name + "' must allow at least one request per positive period");
+            }
+            this.name = name;
+            this.permits = permits;
+            this.period = period;
+            this.patterns = patterns;
+            this.intervalNanos = period.toNanos() / permits;
+            this.burstNanos = period.toNanos() - intervalNanos;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public int permits() {
+            return permits;
+        }
+
+        public Duration period() {
+            return period;
+        }
+
+        /**
+         * @return Requests rejected in this group since startup
+         */
+        public long rejected() {
+            return rejected.sum();
+        }
+    }
+
+    private static final class Stripe {
+
+        private final Map<Group, Map<String, AtomicLong>> buckets = new ConcurrentHashMap<>();
+        private final AtomicLong nextSweep = new AtomicLong(Long.MIN_VALUE);
+
+        Map<String, AtomicLong> buckets(Group group) {
+            Map<String, AtomicLong> groupBuckets = buckets.get(group);
+            return groupBuckets != null ? groupBuckets : buckets.computeIfAbsent(group, g -> new ConcurrentHashMap<>());
+        }
+
+        /**
+         * Removes buckets that have been full for longer than the idle timeout; one caller per interval does the work.
+         */
+        void sweepIfDue(long now, long idleNanos) {
+            long due = nextSweep.get();
+            if (due != Long.MIN_VALUE && now - due < 0) {
+                return;
+            }
+            if (!nextSweep.compareAndSet(due, now + idleNanos)) {
+                return;
+            }
+            for (Map<String, AtomicLong> groupBuckets : buckets.values()) {
+                groupBuckets.entrySet().removeIf(entry -> now - entry.getValue().get() > idleNanos);
+            }
+        }
+    }
+
+    /**
+     * Collects route groups in declaration order.
+     */
+    public static final class Builder {
+
+        private final List<Group> groups = new ArrayList<>();
+        private int stripes = 16;
+        private Duration idleTimeout = Duration.ofMinutes(10);
+        private LongSupplier nanoClock = System::nanoTime;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a route group, e.g. {@code group("admin", "60/PT1M", "/api/admin/**")}
+         *
+         * @param limit Requests per period and principal, as "permits/ISO-8601 duration"
+         */
+        public Builder group(String name, String limit, String... patterns) {
+            int slash = limit.indexOf('/');
+            if (slash < 0) {
+                throw new IllegalArgumentException("Rate limit of group '" + name + "' must look like 100/PT1M: " + limit);
+            }
+            List<PathPattern> parsed = new ArrayList<>();
+            for (String pattern : patterns) {
+                parsed.add(PathPatternParser.defaultInstance.parse(pattern));
+            }
+            groups.add(new Group(name, Integer.parseInt(limit.substring(0, slash).trim()),
+                    Duration.parse(limit.substring(slash + 1).trim()), List.copyOf(parsed)));
+            return this;
+        }
+
+        /**
+         * @param stripes Number of bucket stripes, rounded up to a power of two
+         */
+        public Builder stripes(int stripes) {
+            this.stripes = stripes;
+            return this;
+        }
+
+        /**
+         * @param idleTimeout How long a bucket must have been full before it is dropped
+         */
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * @param nanoClock Source of {@link System#nanoTime()}-like instants, for tests
+         */
+        public Builder nanoClock(LongSupplier nanoClock) {
+            this.nanoClock = nanoClock;
+            return this;
+        }
+
+        public RequestRateLimiter build() {
+            return new RequestRateLimiter(groups, stripes, idleTimeout, nanoClock);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.postgrad.securitydemo.security;
+
+import com.postgrad.securitydemo.dto.ResourceVersion;
+import com.postgrad.securitydemo.model.Resource;
+import com.postgrad.securitydemo.repository.ResourceRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.access.PermissionEvaluator;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * Ownership-aware permission checks for {@link Resource}, used as
+ * {@code hasPermission(#id, 'Resource', 'write')} in method security expressions.
+ *
+ * Permissions:
+ * - "read": the resource is public, owned by the caller, or the caller is an admin
+ * - "write": the resource is owned by the caller, or the caller is an admin
+ *
+ * A resource loaded by ID for a check is remembered for the current request (see
+ * {@link LoadedResources}) so the secured method does not have to read it again.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResourcePermissionEvaluator implements PermissionEvaluator {
+
+    public static final String TARGET_TYPE = "Resource";
+
+    private final ResourceRepository resourceRepository;
+
+    @Override
+    public boolean hasPermission(Authentication authentication, Object targetDomainObject, Object permission) {
+        if (targetDomainObject instanceof Resource resource) {
+            return isPermitted(authentication, resource.getOwner(), resource.isPublicResource(), permission);
+        }
+        if (targetDomainObject instanceof ResourceVersion version) {
+            return isPermitted(authentication, version.owner(), version.publicResource(), permission);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean hasPermission(Authentication authentication, Serializable targetId, String targetType, Object permission) {
+        if (!TARGET_TYPE.equals(targetType) || !(targetId instanceof Long id)) {
+            return false;
+        }
+        return resourceRepository.findById(id)
+                .map(resource -> {
+                    LoadedResources.remember(resource);
+                    return isPermitted(authentication, resource.getOwner(), resource.isPublicResource(), permission);
+                })
+                .orElse(false);
+    }
+
+    private static boolean isPermitted(Authentication authentication, String owner, boolean publicResource,
+                                       Object permission) {
+        if (authentication == null) {
+            return false;
+        }
+        boolean ownerOrAdmin = Objects.equals(owner, authentication.getName()) || isAdmin(authentication);
+        return switch (String.valueOf(permission)) {
+            case "read" -> publicResource || ownerOrAdmin;
+            case "write" -> ownerOrAdmin;
+            default -> false;
+        };
+    }
+
+    private static boolean isAdmin(Authentication authentication) {
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if ("ROLE_ADMIN".equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+package com.postgrad.securitydemo.security;
+
+import com.postgrad.securitydemo.dto.ResourceVersion;
+import com.postgrad.securitydemo.model.Resource;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.authentication.AuthenticationTrustResolver;
+import org.springframework.security.authentication.AuthenticationTrustResolverImpl;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Authorization policies for resource operations, referenced from {@link Policy} on
+ * {@link com.postgrad.securitydemo.service.ResourceService}.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResourcePolicies {
+
+    public static final String AUTHENTICATED = "authenticated";
+    public static final String RESOURCE_READ = "resource.read";
+    public static final String RESOURCE_VERSION_READ = "resource.version.read";
+    public static final String RESOURCE_WRITE = "resource.write";
+    public static final String HAS_REQUESTED_ROLE = "role.requested";
+
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
+    private final ResourcePermissionEvaluator permissionEvaluator;
+
+    /**
+     * The caller is authenticated (not anonymous)
+     */
+    @PolicyDefinition(AUTHENTICATED)
+    public boolean isAuthenticated(Authentication authentication) {
+        return trustResolver.isAuthenticated(authentication);
+    }
+
+    /**
+     * The looked-up resource is public, owned by the caller, or the caller is an admin.
+     * An empty result reveals nothing and is let through, so callers can answer 404.
+     */
+    @PolicyDefinition(RESOURCE_READ)
+    public boolean canRead(Authentication authentication, Optional<Resource> resource) {
+        return resource.isEmpty() || permissionEvaluator.hasPermission(authentication, resource.get(), "read");
+    }
+
+    /**
+     * Same as {@link #canRead}, for the version lookup behind conditional requests
+     */
+    @PolicyDefinition(RESOURCE_VERSION_READ)
+    public boolean canReadVersion(Authentication authentication, Optional<ResourceVersion> version) {
+        return version.isEmpty() || permissionEvaluator.hasPermission(authentication, version.get(), "read");
+    }
+
+    /**
+     * The resource exists and is owned by the caller, or the caller is an admin
+     */
+    @PolicyDefinition(RESOURCE_WRITE)
+    public boolean canWrite(Authentication authentication, Long id) {
+        return permissionEvaluator.hasPermission(authentication, id, ResourcePermissionEvaluator.TARGET_TYPE, "write");
+    }
+
+    /**
+     * The caller has the role passed as the first argument (with or without the "ROLE_" prefix)
+     */
+    @PolicyDefinition(HAS_REQUESTED_ROLE)
+    public boolean hasRequestedRole(Authentication authentication, String role) {
+        if (role == null) {
+            return false;
+        }
+        String authority = role.startsWith(ROLE_PREFIX) ? role : ROLE_PREFIX + role;
+        for (GrantedAuthority granted : authentication.getAuthorities()) {
+            if (authority.equals(granted.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
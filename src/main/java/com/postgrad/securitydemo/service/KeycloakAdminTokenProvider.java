@@ -0,0 +1,190 @@
+package com.postgrad.securitydemo.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Holds the Keycloak admin access token used for admin API calls.
+ *
+ * The token is cached until shortly before it expires. Renewal uses the refresh token while
+ * it is valid and falls back to the password grant otherwise. Concurrent callers that need
+ * a new token share a single token request.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class KeycloakAdminTokenProvider {
+
+    private final RestTemplate restTemplate;
+
+    @Value("${keycloak.auth-server-url}")
+    private String keycloakServerUrl;
+
+    @Value("${keycloak.admin.username:admin}")
+    private String adminUsername;
+
+    @Value("${keycloak.admin.password:admin}")
+    private String adminPassword;
+
+    @Value("${keycloak.admin.client-id:admin-cli}")
+    private String adminClientId;
+
+    // Renew this long before the token actually expires
+    @Value("${keycloak.admin.token-refresh-skew:PT30S}")
+    private Duration refreshSkew;
+
+    private Clock clock = Clock.systemUTC();
+
+    private volatile AdminToken current;
+
+    // Token request in progress, shared by all callers that need a new token
+    private CompletableFuture<AdminToken> inFlight;
+
+    /**
+     * Get a valid admin access token, requesting a new one if needed
+     *
+     * @return The access token, or null if Keycloak could not issue one
+     */
+    public String getAccessToken() {
+        AdminToken token = current;
+        if (token != null && token.isValidAt(clock.instant().plus(refreshSkew))) {
+            return token.accessToken();
+        }
+        AdminToken renewed = renewShared();
+        return renewed != null ? renewed.accessToken() : null;
+    }
+
+    /**
+     * Discard a token that Keycloak rejected and get a new one.
+     * If another caller already replaced the rejected token, its replacement is returned.
+     *
+     * @param rejectedToken The access token that was answered with 401
+     * @return A new access token, or null if Keycloak could not issue one
+     */
+    public String forceRefresh(String rejectedToken) {
+        synchronized (this) {
+            AdminToken token = current;
+            if (token != null && rejectedToken.equals(token.accessToken())) {
+                // Keep the refresh token, only force the access token to be renewed
+                current = new AdminToken(null, Instant.EPOCH, token.refreshToken(), token.refreshExpiresAt());
+            }
+        }
+        return getAccessToken();
+    }
+
+    private AdminToken renewShared() {
+        CompletableFuture<AdminToken> future;
+        boolean leader = false;
+        synchronized (this) {
+            if (inFlight == null) {
+                // A renewal may have finished after our caller read the stale token. A token
+                // rejected through forceRefresh has already been replaced by an invalid one.
+                AdminToken token = current;
+                if (token != null && token.isValidAt(clock.instant().plus(refreshSkew))) {
+                    return token;
+                }
+                inFlight = new CompletableFuture<>();
+                leader = true;
+            }
+            future = inFlight;
+        }
+
+        if (leader) {
+            AdminToken renewed = null;
+            try {
+                renewed = requestToken(current);
+                if (renewed != null) {
+                    current = renewed;
+                }
+            } finally {
+                synchronized (this) {
+                    inFlight = null;
+                }
+                future.complete(renewed);
+            }
+        }
+        return future.join();
+    }
+
+    /**
+     * Request a new token, preferring the refresh grant when a usable refresh token exists
+     */
+    private AdminToken requestToken(AdminToken previous) {
+        if (previous != null && previous.refreshToken() != null
+                && previous.refreshExpiresAt().isAfter(clock.instant().plus(refreshSkew))) {
+            MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+            form.add("grant_type", "refresh_token");
+            form.add("client_id", adminClientId);
+            form.add("refresh_token", previous.refreshToken());
+
+            AdminToken refreshed = postTokenRequest(form);
+            if (refreshed != null) {
+                return refreshed;
+            }
+            log.debug("Refresh grant failed, falling back to password grant");
+        }
+
+        MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
+        form.add("grant_type", "password");
+        form.add("client_id", adminClientId);
+        form.add("username", adminUsername);
+        form.add("password", adminPassword);
+        return postTokenRequest(form);
+    }
+
+    private AdminToken postTokenRequest(MultiValueMap<String, String> form) {
+        try {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+
+            ResponseEntity<Map> response = restTemplate.postForEntity(
+                    keycloakServerUrl + "/realms/master/protocol/openid-connect/token",
+                    new HttpEntity<>(form, headers),
+                    Map.class
+            );
+
+            Map<?, ?> body = response.getBody();
+            if (body == null || !body.containsKey("access_token")) {
+                log.error("Failed to get admin token: No access_token in response");
+                return null;
+            }
+
+            Instant now = clock.instant();
+            return new AdminToken(
+                    (String) body.get("access_token"),
+                    now.plusSeconds(seconds(body.get("expires_in"))),
+                    (String) body.get("refresh_token"),
+                    now.plusSeconds(seconds(body.get("refresh_expires_in")))
+            );
+        } catch (Exception e) {
+            log.error("Error getting admin token: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static long seconds(Object value) {
+        return value instanceof Number number ? number.longValue() : 0L;
+    }
+
+    private record AdminToken(String accessToken, Instant expiresAt, String refreshToken, Instant refreshExpiresAt) {
+
+        boolean isValidAt(Instant instant) {
+            return accessToken != null && expiresAt.isAfter(instant);
+        }
+    }
+}
@@ -1,37 +1,85 @@
 package com.postgrad.securitydemo.service;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.postgrad.securitydemo.cache.UserCache;
+import com.postgrad.securitydemo.cache.UserCacheSnapshot;
+import com.postgrad.securitydemo.cache.UserCacheStats;
+import com.postgrad.securitydemo.cluster.ClusterLeases;
+import com.postgrad.securitydemo.cluster.UserCacheChange;
+import com.postgrad.securitydemo.cluster.UserCacheInvalidationLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
- * Service for synchronizing user information from Keycloak
+ * Service for synchronizing user information from Keycloak.
+ *
+ * With several instances sharing one database, cache clears and sync results are propagated
+ * through the {@link UserCacheInvalidationLog}: only the node holding the "user-sync" lease
+ * runs the scheduled sync against Keycloak, and the others apply the changes it publishes.
+ *
+ * The user cache is saved to a {@link UserCacheSnapshot} periodically and on shutdown, and
+ * restored on startup, followed by an incremental sync in the background that picks up what
+ * changed in Keycloak while the instance was down.
  */
 @Service
 @Slf4j
-@RequiredArgsConstructor
 public class KeycloakUserService {
 
+    private static final String SYNC_LEASE = "user-sync";
+
     private final RestTemplate restTemplate;
+    private final KeycloakAdminTokenProvider adminTokenProvider;
+    private final ObjectMapper objectMapper;
 
     // Cache of user information
-    private final Map<String, UserRepresentation> userCache = new ConcurrentHashMap<>();
+    private final UserCache userCache;
+    private final UserCacheSnapshot userCacheSnapshot;
+    private final TaskScheduler taskScheduler;
+
+    // Cross-node coordination through the shared database
+    private final ClusterLeases clusterLeases;
+    private final UserCacheInvalidationLog invalidationLog;
+
+    // keycloak.user.sync, by mode and whether the run read all pages
+    private final Timer fullSyncs;
+    private final Timer incompleteFullSyncs;
+    private final Timer incrementalSyncs;
+    private final Timer incompleteIncrementalSyncs;
 
     @Value("${keycloak.auth-server-url}")
     private String keycloakServerUrl;
@@ -39,77 +87,238 @@ public class KeycloakUserService {
     @Value("${keycloak.realm}")
     private String realm;
 
-    // Add admin credentials
-    @Value("${keycloak.admin.username:admin}")
-    private String adminUsername;
+    @Value("${keycloak.sync.page-size:500}")
+    private int syncPageSize;
+
+    // Shorter than the sync interval, so another node takes over by the next run if the leader goes away
+    @Value("${keycloak.sync.lease-duration:PT55M}")
+    private Duration syncLeaseDuration;
+
+    // Above this many changed users a sync tells the other nodes to drop everything instead
+    @Value("${cluster.invalidation.max-updates:1000}")
+    private int maxPublishedUpdates;
+
+    @Value("${keycloak.user-cache.snapshot.enabled:false}")
+    private boolean snapshotEnabled;
+
+    // A restarted instance that takes the sync lease revalidates within this window
+    @Value("${keycloak.user-cache.snapshot.revalidation-jitter:PT30S}")
+    private Duration revalidationJitter;
 
-    @Value("${keycloak.admin.password:admin}")
-    private String adminPassword;
+    // Whether a sync has read all of Keycloak since startup
+    private volatile boolean syncedSinceStartup;
 
-    @Value("${keycloak.admin.client-id:admin-cli}")
-    private String adminClientId;
+    // Content hash per user ID as of the last sync, used for incremental runs; also updated from other nodes' syncs
+    private volatile Map<String, Long> userHashes = new ConcurrentHashMap<>();
+
+    // Maximum number of concurrent Keycloak calls made for one batch lookup
+    @Value("${keycloak.batch.concurrency:8}")
+    private int batchConcurrency;
+
+    @Value("${keycloak.batch.queue-capacity:256}")
+    private int batchQueueCapacity;
+
+    // Bounded pool for batch lookups; kept private so it does not replace Spring's task executor
+    private ThreadPoolExecutor batchExecutor;
+
+    public KeycloakUserService(
+            RestTemplate restTemplate,
+            KeycloakAdminTokenProvider adminTokenProvider,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            UserCache userCache,
+            UserCacheSnapshot userCacheSnapshot,
+            TaskScheduler taskScheduler,
+            ClusterLeases clusterLeases,
+            UserCacheInvalidationLog invalidationLog) {
+        this.restTemplate = restTemplate;
+        this.adminTokenProvider = adminTokenProvider;
+        this.objectMapper = objectMapper;
+        this.userCache = userCache;
+        this.userCacheSnapshot = userCacheSnapshot;
+        this.taskScheduler = taskScheduler;
+        this.clusterLeases = clusterLeases;
+        this.invalidationLog = invalidationLog;
+        this.fullSyncs = syncTimer(meterRegistry, "full", true);
+        this.incompleteFullSyncs = syncTimer(meterRegistry, "full", false);
+        this.incrementalSyncs = syncTimer(meterRegistry, "incremental", true);
+        this.incompleteIncrementalSyncs = syncTimer(meterRegistry, "incremental", false);
+    }
+
+    private static Timer syncTimer(MeterRegistry meterRegistry, String mode, boolean completed) {
+        return Timer.builder("keycloak.user.sync")
+                .description("User synchronization runs against Keycloak")
+                .tag("mode", mode)
+                .tag("completed", String.valueOf(completed))
+                .register(meterRegistry);
+    }
 
     /**
-     * Get admin token from Keycloak
+     * Start the batch lookup pool, then restore the user cache snapshot
      */
-    private String getAdminToken() {
-        try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
-
-            MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
-            map.add("grant_type", "password");
-            map.add("client_id", adminClientId);
-            map.add("username", adminUsername);
-            map.add("password", adminPassword);
+    @PostConstruct
+    void start() {
+        startBatchExecutor();
+        restoreUserCache();
+    }
 
-            HttpEntity<MultiValueMap<String, String>> request = new HttpEntity<>(map, headers);
+    /**
+     * Save the user cache snapshot, then stop the batch lookup pool
+     */
+    @PreDestroy
+    void stop() {
+        saveUserCache();
+        batchExecutor.shutdownNow();
+    }
 
-            ResponseEntity<Map> response = restTemplate.postForEntity(
-                    keycloakServerUrl + "/realms/master/protocol/openid-connect/token",
-                    request,
-                    Map.class
-            );
+    private void startBatchExecutor() {
+        AtomicInteger threadCount = new AtomicInteger();
+        batchExecutor = new ThreadPoolExecutor(batchConcurrency, batchConcurrency, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(batchQueueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "keycloak-batch-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // When saturated, the requesting thread does the lookup itself instead of queueing more
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        batchExecutor.allowCoreThreadTimeOut(true);
+    }
 
-            if (response.getBody() != null && response.getBody().containsKey("access_token")) {
-                return (String) response.getBody().get("access_token");
-            } else {
-                log.error("Failed to get admin token: No access_token in response");
-                return null;
+    /**
+     * Restore the user cache from the last snapshot and schedule its revalidation. Changes
+     * other nodes published since the snapshot was taken are replayed from the invalidation
+     * log; a snapshot older than the log's retention is not used.
+     */
+    private void restoreUserCache() {
+        if (!snapshotEnabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            Instant writtenAt = userCacheSnapshot.writtenAt();
+            if (writtenAt == null) {
+                return;
             }
-        } catch (Exception e) {
-            log.error("Error getting admin token: {}", e.getMessage());
-            return null;
+            if (!invalidationLog.replaySince(writtenAt)) {
+                log.info("User cache snapshot from {} predates the invalidation log, starting empty", writtenAt);
+                return;
+            }
+            int restored = userCacheSnapshot.read(entry -> {
+                userCache.put(entry.userId(), entry.user(), entry.timeToLive());
+                // The snapshot holds exactly the hashed fields, so unchanged users stay unchanged for the next sync
+                userHashes.put(entry.userId(), contentHash(entry.user()));
+            });
+            if (restored == 0) {
+                return;
+            }
+            log.info("Restored {} users from {} in {} ms", restored, userCacheSnapshot.path(),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            long jitterMillis = ThreadLocalRandom.current().nextLong(Math.max(1, revalidationJitter.toMillis()));
+            taskScheduler.schedule(this::revalidateRestoredUsers, Instant.now().plusMillis(jitterMillis));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not restore user cache snapshot, starting empty: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Incremental sync after a restore, on the node holding the sync lease and unless a sync
+     * has run in the meantime. Other nodes get what the sync leader changed while they were
+     * down from the replayed invalidation log instead.
+     */
+    private void revalidateRestoredUsers() {
+        if (syncedSinceStartup || !clusterLeases.tryAcquire(SYNC_LEASE, syncLeaseDuration)) {
+            return;
+        }
+        log.info("Revalidating restored users against Keycloak");
+        syncAllUsers(false);
+    }
+
+    /**
+     * Scheduled task saving the user cache, so a restart does not start cold
+     */
+    @Scheduled(fixedDelayString = "${keycloak.user-cache.snapshot.interval:PT5M}",
+            initialDelayString = "${keycloak.user-cache.snapshot.interval:PT5M}")
+    public void saveUserCache() {
+        if (!snapshotEnabled) {
+            return;
+        }
+        try {
+            int saved = userCacheSnapshot.write(userCache);
+            log.debug("Saved {} users to {}", saved, userCacheSnapshot.path());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not save user cache snapshot: {}", e.getMessage());
         }
     }
 
     /**
-     * Create HTTP headers with admin token
+     * Run an admin API call with a bearer token; if Keycloak answers 401,
+     * force a token refresh and retry once
+     *
+     * @return The call result, or null if no admin token could be obtained
      */
-    private HttpHeaders createAuthHeaders() {
-        String token = getAdminToken();
+    private <T> T exchangeAsAdmin(Function<HttpEntity<Void>, T> call) {
+        String token = adminTokenProvider.getAccessToken();
         if (token == null) {
             return null;
         }
 
+        try {
+            return call.apply(authEntity(token));
+        } catch (HttpClientErrorException.Unauthorized e) {
+            log.debug("Admin token rejected by Keycloak, refreshing and retrying once");
+            String refreshed = adminTokenProvider.forceRefresh(token);
+            if (refreshed == null) {
+                throw e;
+            }
+            return call.apply(authEntity(refreshed));
+        }
+    }
+
+    /**
+     * Create an HTTP entity carrying the admin token
+     */
+    private static HttpEntity<Void> authEntity(String token) {
         HttpHeaders headers = new HttpHeaders();
         headers.setBearerAuth(token);
-        return headers;
+        return new HttpEntity<>(headers);
     }
 
     /**
-     * Get user information from Keycloak - uses cache if available
+     * Get user information from Keycloak - uses cache if available.
+     * Concurrent misses for the same user share one Keycloak call.
      */
     public UserRepresentation getUserInfo(String userId) {
-        if (userCache.containsKey(userId)) {
-            return userCache.get(userId);
-        }
+        return userCache.get(userId, this::fetchUserFromKeycloak);
+    }
+
+    /**
+     * Get information for many users at once. Cached users are returned directly;
+     * the misses are fetched from Keycloak concurrently on a bounded pool.
+     *
+     * @param userIds The users to look up; duplicates are ignored
+     * @return The users that exist, keyed by ID, in request order
+     */
+    public Map<String, UserRepresentation> getUsersInfo(Collection<String> userIds) {
+        Map<String, UserRepresentation> users = new LinkedHashMap<>();
+        Map<String, CompletableFuture<UserRepresentation>> pending = new LinkedHashMap<>();
 
-        UserRepresentation user = fetchUserFromKeycloak(userId);
-        if (user != null) {
-            userCache.put(userId, user);
+        for (String userId : new LinkedHashSet<>(userIds)) {
+            UserRepresentation cached = userCache.get(userId);
+            if (cached != null) {
+                users.put(userId, cached);
+            } else {
+                pending.put(userId, CompletableFuture.supplyAsync(() -> getUserInfo(userId), batchExecutor));
+            }
         }
-        return user;
+
+        pending.forEach((userId, lookup) -> {
+            UserRepresentation user = lookup.join();
+            if (user != null) {
+                users.put(userId, user);
+            }
+        });
+        return users;
     }
 
     /**
@@ -117,22 +326,16 @@ public class KeycloakUserService {
      */
     private UserRepresentation fetchUserFromKeycloak(String userId) {
         try {
-            HttpHeaders headers = createAuthHeaders();
-            if (headers == null) {
-                return null;
-            }
-
-            HttpEntity<String> entity = new HttpEntity<>(headers);
             String url = String.format("%s/admin/realms/%s/users/%s", keycloakServerUrl, realm, userId);
 
-            ResponseEntity<UserRepresentation> response = restTemplate.exchange(
+            ResponseEntity<UserRepresentation> response = exchangeAsAdmin(entity -> restTemplate.exchange(
                     url,
                     HttpMethod.GET,
                     entity,
                     UserRepresentation.class
-            );
+            ));
 
-            return response.getBody();
+            return response != null ? response.getBody() : null;
         } catch (Exception e) {
             log.error("Error fetching user from Keycloak: {}", e.getMessage());
             return null;
@@ -140,58 +343,229 @@ public class KeycloakUserService {
     }
 
     /**
-     * Synchronize all users from Keycloak
+     * Synchronize all users from Keycloak, only touching users that changed since the last run
      */
-    public List<UserRepresentation> syncAllUsers() {
+    public UserSyncResult syncAllUsers() {
+        return syncAllUsers(false);
+    }
+
+    /**
+     * Synchronize all users from Keycloak.
+     *
+     * Users are read page by page with first/max and each page is streamed into the cache
+     * as it is parsed, so the realm is never held in memory as a whole. A content hash per
+     * user is kept between runs; an incremental run only writes users whose hash changed or
+     * that are no longer cached (expired, evicted or cleared since), a full run writes every
+     * user. Users that disappeared from Keycloak are evicted once a run has read all pages.
+     * Each run is timed as keycloak.user.sync.
+     *
+     * The changes are published to the other nodes: users whose hash changed as updates and
+     * removed users as removals, or a single drop-everything entry when too many users changed.
+     *
+     * @param full Whether to write every user instead of only the changed ones
+     */
+    public synchronized UserSyncResult syncAllUsers(boolean full) {
+        long started = System.nanoTime();
+        Map<String, Long> previousHashes = userHashes;
+        Map<String, Long> seenHashes = new ConcurrentHashMap<>(Math.max(16, userHashes.size() * 4 / 3));
+        Map<String, UserRepresentation> updates = new LinkedHashMap<>();
+        int[] counts = new int[2]; // changed, unchanged
+        int pages = 0;
+        int fetched = 0;
+        boolean completed = false;
+
         try {
-            HttpHeaders headers = createAuthHeaders();
-            if (headers == null) {
-                return List.of();
+            int first = 0;
+            while (true) {
+                Integer pageCount = fetchUserPage(first, syncPageSize, user -> {
+                    long hash = contentHash(user);
+                    seenHashes.put(user.getId(), hash);
+                    Long previous = previousHashes.get(user.getId());
+                    boolean changed = previous == null || previous != hash;
+                    if (changed && updates.size() <= maxPublishedUpdates) {
+                        updates.put(user.getId(), user);
+                    }
+                    if (full || changed) {
+                        userCache.put(user.getId(), user);
+                        counts[0]++;
+                    } else {
+                        // Unchanged in Keycloak, but our copy may have expired or been cleared since the last run
+                        if (!userCache.contains(user.getId())) {
+                            userCache.put(user.getId(), user);
+                        }
+                        counts[1]++;
+                    }
+                });
+                if (pageCount == null) {
+                    break;
+                }
+                pages++;
+                fetched += pageCount;
+                if (pageCount < syncPageSize) {
+                    completed = true;
+                    syncedSinceStartup = true;
+                    break;
+                }
+                first += syncPageSize;
             }
+        } catch (Exception e) {
+            log.error("Error synchronizing users from Keycloak: {}", e.getMessage());
+        }
 
-            HttpEntity<String> entity = new HttpEntity<>(headers);
-            String url = String.format("%s/admin/realms/%s/users", keycloakServerUrl, realm);
+        List<String> removals = new ArrayList<>();
+        if (completed) {
+            for (String userId : userHashes.keySet()) {
+                if (!seenHashes.containsKey(userId)) {
+                    userCache.invalidate(userId);
+                    removals.add(userId);
+                }
+            }
+            userHashes = seenHashes;
+        } else {
+            // Keep what we learned, but do not treat unseen users as deleted
+            Map<String, Long> merged = new ConcurrentHashMap<>(userHashes);
+            merged.putAll(seenHashes);
+            userHashes = merged;
+        }
+        publishSyncChanges(updates, removals);
+        int removed = removals.size();
 
-            ResponseEntity<List<UserRepresentation>> response = restTemplate.exchange(
-                    url,
-                    HttpMethod.GET,
-                    entity,
-                    new ParameterizedTypeReference<List<UserRepresentation>>() {}
-            );
+        long elapsedNanos = System.nanoTime() - started;
+        Timer timer = full
+                ? (completed ? fullSyncs : incompleteFullSyncs)
+                : (completed ? incrementalSyncs : incompleteIncrementalSyncs);
+        timer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        UserSyncResult result = new UserSyncResult(full, completed, pages, fetched, counts[0], counts[1], removed,
+                elapsedNanos / 1_000_000);
+        log.info("Synchronized users from Keycloak: {}", result);
+        return result;
+    }
 
-            List<UserRepresentation> users = response.getBody();
-            if (users != null) {
-                users.forEach(user -> userCache.put(user.getId(), user));
-                log.info("Synchronized {} users from Keycloak", users.size());
+    /**
+     * Tell the other nodes what a sync changed; failures only cost them a later reload
+     */
+    private void publishSyncChanges(Map<String, UserRepresentation> updates, List<String> removals) {
+        try {
+            if (updates.size() > maxPublishedUpdates || removals.size() > maxPublishedUpdates) {
+                invalidationLog.publishInvalidateAll();
+            } else {
+                invalidationLog.publishUpdates(updates);
+                invalidationLog.publishRemovals(removals);
             }
+        } catch (RuntimeException e) {
+            log.error("Could not publish user sync changes to other nodes: {}", e.getMessage());
+        }
+    }
 
-            return users != null ? users : List.of();
-        } catch (Exception e) {
-            log.error("Error synchronizing users from Keycloak: {}", e.getMessage());
-            return List.of();
+    /**
+     * Fetch one page of users and hand each user to the consumer while the response is parsed
+     *
+     * @return Number of users on the page, or null if no admin token could be obtained
+     */
+    private Integer fetchUserPage(int first, int max, Consumer<UserRepresentation> consumer) {
+        String url = String.format("%s/admin/realms/%s/users?first=%d&max=%d", keycloakServerUrl, realm, first, max);
+
+        return exchangeAsAdmin(entity -> restTemplate.execute(
+                url,
+                HttpMethod.GET,
+                request -> request.getHeaders().putAll(entity.getHeaders()),
+                response -> {
+                    int count = 0;
+                    try (JsonParser parser = objectMapper.getFactory().createParser(response.getBody())) {
+                        if (parser.nextToken() != JsonToken.START_ARRAY) {
+                            throw new IOException("Expected a JSON array of users");
+                        }
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            consumer.accept(objectMapper.readValue(parser, UserRepresentation.class));
+                            count++;
+                        }
+                    }
+                    return count;
+                }
+        ));
+    }
+
+    /**
+     * 64-bit FNV-1a hash over the user fields we expose, used to detect changes between syncs
+     */
+    private static long contentHash(UserRepresentation user) {
+        long hash = 0xcbf29ce484222325L;
+        for (Object field : new Object[] {
+                user.getUsername(), user.getEmail(), user.getFirstName(), user.getLastName(),
+                user.isEnabled(), user.isEmailVerified(), user.getCreatedTimestamp(), user.getAttributes()}) {
+            String value = String.valueOf(field);
+            for (int i = 0; i < value.length(); i++) {
+                hash ^= value.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            // Field separator so that ("ab", "c") and ("a", "bc") hash differently
+            hash ^= 0x1f;
+            hash *= 0x100000001b3L;
         }
+        return hash;
     }
 
     /**
-     * Scheduled task to sync users every hour
+     * Scheduled task to sync users every hour, on the node that holds the sync lease
      */
-    @Scheduled(fixedRate = 3600000) // Every hour
+    @Scheduled(fixedRateString = "${keycloak.sync.interval:PT1H}", initialDelayString = "${keycloak.sync.initial-delay:PT0S}")
     public void scheduledUserSync() {
+        if (!clusterLeases.tryAcquire(SYNC_LEASE, syncLeaseDuration)) {
+            log.debug("Another node holds the user sync lease; applying its changes instead");
+            return;
+        }
         log.info("Running scheduled user synchronization");
-        syncAllUsers();
+        syncAllUsers(false);
+        invalidationLog.purgeExpired();
+    }
+
+    /**
+     * Scheduled task applying user cache changes made by other nodes
+     */
+    @Scheduled(fixedDelayString = "${cluster.invalidation.poll-interval:PT1S}")
+    public void pollClusterInvalidations() {
+        try {
+            invalidationLog.poll(this::applyClusterChange);
+        } catch (RuntimeException e) {
+            log.warn("Could not poll user cache invalidations: {}", e.getMessage());
+        }
+    }
+
+    private void applyClusterChange(UserCacheChange change) {
+        switch (change.kind()) {
+            case UPDATE -> {
+                userCache.put(change.userId(), change.user());
+                userHashes.put(change.userId(), contentHash(change.user()));
+            }
+            case REMOVE -> {
+                userCache.invalidate(change.userId());
+                userHashes.remove(change.userId());
+            }
+            case INVALIDATE -> userCache.invalidate(change.userId());
+            case INVALIDATE_ALL -> userCache.invalidateAll();
+        }
     }
 
     /**
-     * Clear user from cache to force a refresh
+     * Clear user from cache to force a refresh, on every node
      */
     public void clearUserCache(String userId) {
-        userCache.remove(userId);
+        userCache.invalidate(userId);
+        invalidationLog.publishInvalidate(userId);
     }
 
     /**
-     * Clear entire cache
+     * Clear entire cache, on every node
      */
     public void clearAllCache() {
-        userCache.clear();
+        userCache.invalidateAll();
+        invalidationLog.publishInvalidateAll();
+    }
+
+    /**
+     * Get user cache statistics
+     */
+    public UserCacheStats getCacheStats() {
+        return userCache.stats();
     }
 }
\ No newline at end of file
@@ -1,93 +1,378 @@
 package com.postgrad.securitydemo.service;
 
+import com.postgrad.securitydemo.cache.ResourceReadCache;
+import com.postgrad.securitydemo.dto.BulkItemResult;
+import com.postgrad.securitydemo.dto.CursorPage;
+import com.postgrad.securitydemo.dto.ResourceSummary;
+import com.postgrad.securitydemo.dto.ResourceVersion;
 import com.postgrad.securitydemo.model.Resource;
 import com.postgrad.securitydemo.repository.ResourceRepository;
+import com.postgrad.securitydemo.security.LoadedResources;
+import com.postgrad.securitydemo.security.Policy;
+import com.postgrad.securitydemo.security.ResourcePermissionEvaluator;
+import com.postgrad.securitydemo.security.ResourcePolicies;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityNotFoundException;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.access.prepost.PostAuthorize;
-import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class ResourceService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
     private final ResourceRepository resourceRepository;
+    private final EntityManager entityManager;
+    private final ResourcePermissionEvaluator permissionEvaluator;
+    private final ResourceReadCache resourceReadCache;
+
+    // Bulk operations flush and clear the persistence context after this many items
+    @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:50}")
+    private int jdbcBatchSize;
+
+    /**
+     * Get a page of public resources (no auth required), served from the listing cache
+     */
+    public CursorPage<ResourceSummary> getPublicResources(Long cursor, int limit) {
+        int pageSize = pageSize(limit);
+        Long after = after(cursor);
+        return resourceReadCache.publicPage(after, pageSize, () -> CursorPage.of(
+                resourceRepository.findByPublicResourceTrueAndIdGreaterThanOrderByIdAsc(after, Limit.of(pageSize + 1)),
+                pageSize, ResourceSummary::id));
+    }
 
     /**
-     * Get all public resources (no auth required)
+     * Get a page of all resources (requires authentication)
      */
-    public List<Resource> getPublicResources() {
-        return resourceRepository.findByPublicResourceTrue();
+    @Policy(pre = ResourcePolicies.AUTHENTICATED)
+    @Transactional(readOnly = true)
+    public CursorPage<ResourceSummary> getAllResources(Long cursor, int limit) {
+        int pageSize = pageSize(limit);
+        return CursorPage.of(resourceRepository.findByIdGreaterThanOrderByIdAsc(
+                after(cursor), Limit.of(pageSize + 1)), pageSize, ResourceSummary::id);
     }
 
     /**
-     * Get all resources (requires authentication)
+     * Get the IDs and versions of a page of all resources, to validate a cached listing
      */
-    @PreAuthorize("isAuthenticated()")
-    public List<Resource> getAllResources() {
-        return resourceRepository.findAll();
+    @Policy(pre = ResourcePolicies.AUTHENTICATED)
+    @Transactional(readOnly = true)
+    public CursorPage<ResourceVersion> getAllResourceVersions(Long cursor, int limit) {
+        int pageSize = pageSize(limit);
+        return CursorPage.of(resourceRepository.findVersionsByIdGreaterThanOrderByIdAsc(
+                after(cursor), Limit.of(pageSize + 1)), pageSize, ResourceVersion::id);
     }
 
     /**
-     * Get resources that the current user owns
+     * Stream every resource to the given consumer, in ID order, without materializing the
+     * full list. Rows are read as projections, so the persistence context stays empty.
+     *
+     * @return Number of resources exported
      */
-    @PreAuthorize("isAuthenticated()")
-    public List<Resource> getMyResources() {
+    @Policy(pre = ResourcePolicies.AUTHENTICATED)
+    @Transactional(readOnly = true)
+    public long exportResources(Consumer<ResourceSummary> consumer) {
+        long count = 0;
+        try (Stream<ResourceSummary> resources = resourceRepository.streamAllOrderedById()) {
+            Iterator<ResourceSummary> iterator = resources.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get a page of resources that the current user owns, served from the listing cache
+     */
+    @Policy(pre = ResourcePolicies.AUTHENTICATED)
+    public CursorPage<ResourceSummary> getMyResources(Long cursor, int limit) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        return resourceRepository.findByOwner(auth.getName());
+        int pageSize = pageSize(limit);
+        Long after = after(cursor);
+        return resourceReadCache.ownerPage(auth.getName(), after, pageSize, () -> CursorPage.of(
+                resourceRepository.findByOwnerAndIdGreaterThanOrderByIdAsc(auth.getName(), after, Limit.of(pageSize + 1)),
+                pageSize, ResourceSummary::id));
     }
 
     /**
      * Get resources by ID - only if public OR user is owner OR user has admin role
      */
-    @PostAuthorize("returnObject.isPresent() && (returnObject.get().isPublicResource() || " +
-            "returnObject.get().getOwner() == authentication.name || " +
-            "hasRole('ADMIN'))")
+    @Policy(post = ResourcePolicies.RESOURCE_READ)
+    @Transactional(readOnly = true)
     public Optional<Resource> getResourceById(Long id) {
         return resourceRepository.findById(id);
     }
 
+    /**
+     * Get the version of a resource - same access rule as getResourceById, without loading it
+     */
+    @Policy(post = ResourcePolicies.RESOURCE_VERSION_READ)
+    @Transactional(readOnly = true)
+    public Optional<ResourceVersion> getResourceVersion(Long id) {
+        return resourceRepository.findVersionById(id);
+    }
+
     /**
      * Create a new resource - automatically set current user as owner
      */
-    @PreAuthorize("isAuthenticated()")
+    @Policy(pre = ResourcePolicies.AUTHENTICATED)
     public Resource createResource(Resource resource) {
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         resource.setOwner(auth.getName());
-        return resourceRepository.save(resource);
+        resource.setVersion(null);
+        Resource saved = resourceRepository.save(resource);
+        resourceReadCache.evict(saved.isPublicResource(), saved.getOwner());
+        return saved;
     }
 
     /**
-     * Update a resource - only if user is owner OR has admin role
+     * Update a resource - only if user is owner OR has admin role.
+     * The owner is kept; the row loaded by the permission check is reused, so the update
+     * costs one read and one write. The write is conditional on the version that was read,
+     * so a concurrent update is detected even without an expected version.
+     *
+     * @param expectedVersion Version the client based its change on, or null to accept any
+     * @throws OptimisticLockingFailureException If the resource is not (or no longer) at that version
      */
-    @PreAuthorize("@resourceService.getResourceById(#id).isPresent() && " +
-            "(@resourceService.getResourceById(#id).get().getOwner() == authentication.name || " +
-            "hasRole('ADMIN'))")
-    public Resource updateResource(Long id, Resource resource) {
-        resource.setId(id);
-        return resourceRepository.save(resource);
+    @Policy(pre = ResourcePolicies.RESOURCE_WRITE)
+    @Transactional
+    public Resource updateResource(Long id, Resource resource, Long expectedVersion) {
+        Resource current = loadForWrite(id);
+        if (expectedVersion != null && !expectedVersion.equals(current.getVersion())) {
+            throw new OptimisticLockingFailureException("Resource " + id + " is at version " + current.getVersion()
+                    + ", not " + expectedVersion);
+        }
+        // Work on a detached copy so the bulk update below is the only write
+        entityManager.detach(current);
+        boolean wasPublic = current.isPublicResource();
+        current.setName(resource.getName());
+        current.setDescription(resource.getDescription());
+        current.setPublicResource(resource.isPublicResource());
+        current.setRequiredRole(resource.getRequiredRole());
+        int updated = resourceRepository.updateContent(id, current.getVersion(), current.getName(),
+                current.getDescription(), current.isPublicResource(), current.getRequiredRole());
+        if (updated == 0) {
+            throw new OptimisticLockingFailureException("Resource " + id + " was modified or deleted concurrently");
+        }
+        current.setVersion(current.getVersion() + 1);
+        resourceReadCache.evict(wasPublic || current.isPublicResource(), current.getOwner());
+        return current;
     }
 
     /**
      * Delete a resource - only if user is owner OR has admin role
      */
-    @PreAuthorize("@resourceService.getResourceById(#id).isPresent() && " +
-            "(@resourceService.getResourceById(#id).get().getOwner() == authentication.name || " +
-            "hasRole('ADMIN'))")
+    @Policy(pre = ResourcePolicies.RESOURCE_WRITE)
+    @Transactional
     public void deleteResource(Long id) {
-        resourceRepository.deleteById(id);
+        Optional<Resource> current = LoadedResources.recall(id).or(() -> resourceRepository.findById(id));
+        current.ifPresent(entityManager::detach);
+        if (resourceRepository.deleteDirectlyById(id) > 0) {
+            current.ifPresent(deleted -> resourceReadCache.evict(deleted.isPublicResource(), deleted.getOwner()));
+        }
+    }
+
+    /**
+     * Create many resources in one transaction, owned by the current user.
+     * Inserts are sent in JDBC batches; client-supplied IDs are ignored. Null entries are
+     * reported as INVALID and skipped.
+     */
+    @Policy(pre = ResourcePolicies.AUTHENTICATED)
+    @Transactional
+    public List<BulkItemResult> createResources(List<Resource> resources) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        // Indexed like the request; null where the item was invalid
+        List<Resource> created = new ArrayList<>(resources.size());
+        int persisted = 0;
+        boolean publicAffected = false;
+        for (Resource resource : resources) {
+            if (resource == null) {
+                created.add(null);
+                continue;
+            }
+            resource.setId(null);
+            resource.setVersion(null);
+            resource.setOwner(auth.getName());
+            entityManager.persist(resource);
+            created.add(resource);
+            publicAffected |= resource.isPublicResource();
+            if (++persisted % jdbcBatchSize == 0) {
+                flushAndClear();
+            }
+        }
+        entityManager.flush();
+        if (persisted > 0) {
+            resourceReadCache.evict(publicAffected, auth.getName());
+        }
+
+        List<BulkItemResult> results = new ArrayList<>(created.size());
+        for (int i = 0; i < created.size(); i++) {
+            Resource resource = created.get(i);
+            results.add(resource != null
+                    ? new BulkItemResult(i, resource.getId(), BulkItemResult.Status.CREATED)
+                    : new BulkItemResult(i, null, BulkItemResult.Status.INVALID));
+        }
+        return results;
+    }
+
+    /**
+     * Update many resources in one transaction. Each item is checked on its own: items the
+     * user may not write are reported as FORBIDDEN and items carrying a stale version as
+     * CONFLICT, and null entries or items without an ID as INVALID, and left untouched; the
+     * rest are updated (owners are kept). Rows are loaded and written chunk by chunk, in JDBC
+     * batches.
+     */
+    @Policy(pre = ResourcePolicies.AUTHENTICATED)
+    @Transactional
+    public List<BulkItemResult> updateResources(List<Resource> resources) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        List<BulkItemResult> results = new ArrayList<>(resources.size());
+        boolean publicAffected = false;
+        Set<String> owners = new HashSet<>();
+        for (int start = 0; start < resources.size(); start += jdbcBatchSize) {
+            List<Resource> chunk = resources.subList(start, Math.min(start + jdbcBatchSize, resources.size()));
+            Map<Long, Resource> current = loadById(chunk.stream()
+                    .map(update -> update != null ? update.getId() : null)
+                    .toList());
+            for (int i = 0; i < chunk.size(); i++) {
+                Resource update = chunk.get(i);
+                Long id = update != null ? update.getId() : null;
+                Resource existing = id != null ? current.get(id) : null;
+                BulkItemResult.Status status;
+                if (id == null) {
+                    status = BulkItemResult.Status.INVALID;
+                } else if (existing == null) {
+                    status = BulkItemResult.Status.NOT_FOUND;
+                } else if (!permissionEvaluator.hasPermission(auth, existing, "write")) {
+                    status = BulkItemResult.Status.FORBIDDEN;
+                } else if (update.getVersion() != null && !update.getVersion().equals(existing.getVersion())) {
+                    status = BulkItemResult.Status.CONFLICT;
+                } else {
+                    publicAffected |= existing.isPublicResource() || update.isPublicResource();
+                    owners.add(existing.getOwner());
+                    existing.setName(update.getName());
+                    existing.setDescription(update.getDescription());
+                    existing.setPublicResource(update.isPublicResource());
+                    existing.setRequiredRole(update.getRequiredRole());
+                    status = BulkItemResult.Status.UPDATED;
+                }
+                results.add(new BulkItemResult(start + i, id, status));
+            }
+            flushAndClear();
+        }
+        resourceReadCache.evict(publicAffected, owners);
+        return results;
+    }
+
+    /**
+     * Delete many resources in one transaction. Each ID is checked on its own; permitted
+     * rows are removed with one DELETE statement per chunk.
+     */
+    @Policy(pre = ResourcePolicies.AUTHENTICATED)
+    @Transactional
+    public List<BulkItemResult> deleteResources(List<Long> ids) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        List<BulkItemResult> results = new ArrayList<>(ids.size());
+        boolean publicAffected = false;
+        Set<String> owners = new HashSet<>();
+        for (int start = 0; start < ids.size(); start += jdbcBatchSize) {
+            List<Long> chunk = ids.subList(start, Math.min(start + jdbcBatchSize, ids.size()));
+            Map<Long, Resource> current = loadById(chunk);
+            List<Long> permitted = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                Long id = chunk.get(i);
+                Resource existing = id != null ? current.get(id) : null;
+                BulkItemResult.Status status;
+                if (id == null) {
+                    status = BulkItemResult.Status.INVALID;
+                } else if (existing == null) {
+                    status = BulkItemResult.Status.NOT_FOUND;
+                } else if (!permissionEvaluator.hasPermission(auth, existing, "write")) {
+                    status = BulkItemResult.Status.FORBIDDEN;
+                } else {
+                    publicAffected |= existing.isPublicResource();
+                    owners.add(existing.getOwner());
+                    permitted.add(id);
+                    status = BulkItemResult.Status.DELETED;
+                }
+                results.add(new BulkItemResult(start + i, id, status));
+            }
+            // Detach first so the bulk delete does not leave stale managed instances behind
+            entityManager.clear();
+            if (!permitted.isEmpty()) {
+                resourceRepository.deleteAllByIdInBatch(permitted);
+            }
+        }
+        resourceReadCache.evict(publicAffected, owners);
+        return results;
     }
 
     /**
      * Get resources that require specific role
      */
-    @PreAuthorize("hasRole(#role)")
-    public List<Resource> getResourcesByRequiredRole(String role) {
+    @Policy(pre = ResourcePolicies.HAS_REQUESTED_ROLE)
+    @Transactional(readOnly = true)
+    public List<ResourceSummary> getResourcesByRequiredRole(String role) {
         return resourceRepository.findByRequiredRole(role);
     }
-}
\ No newline at end of file
+
+    /**
+     * The resource the permission check loaded for this request, or a fresh read outside a request
+     */
+    private Resource loadForWrite(Long id) {
+        return LoadedResources.recall(id)
+                .or(() -> resourceRepository.findById(id))
+                .orElseThrow(() -> new EntityNotFoundException("Resource " + id + " not found"));
+    }
+
+    /**
+     * Load the given rows with one query, keyed by ID; unknown and null IDs are simply absent
+     */
+    private Map<Long, Resource> loadById(List<Long> ids) {
+        List<Long> present = ids.stream().filter(Objects::nonNull).distinct().toList();
+        return resourceRepository.findAllById(present).stream()
+                .collect(Collectors.toMap(Resource::getId, Function.identity()));
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Clamp a requested page size to [1, MAX_PAGE_SIZE]
+     */
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * The ID to continue after; IDs start at 1, so no cursor means "after 0"
+     */
+    private static Long after(Long cursor) {
+        return cursor != null ? cursor : 0L;
+    }
+}
@@ -0,0 +1,17 @@
+package com.postgrad.securitydemo.service;
+
+/**
+ * Outcome of a user synchronization run against Keycloak.
+ *
+ * @param full Whether every user was written to the cache, regardless of changes
+ * @param completed Whether all pages were read; false if the run stopped on an error
+ * @param pages Number of pages requested from Keycloak
+ * @param fetched Number of users read
+ * @param changed Users that were new or whose content changed since the last run
+ * @param unchanged Users whose content was identical to the last run
+ * @param removed Users seen in the last run but no longer present in Keycloak
+ * @param elapsedMillis Wall-clock duration of the run
+ */
+public record UserSyncResult(boolean full, boolean completed, int pages, int fetched, int changed,
+                             int unchanged, int removed, long elapsedMillis) {
+}
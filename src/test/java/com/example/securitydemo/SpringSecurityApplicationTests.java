@@ -1,9 +1,10 @@
 package com.example.securitydemo;
 
+import com.postgrad.securitydemo.SpringSecurityApplication;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+@SpringBootTest(classes = SpringSecurityApplication.class)
 class SpringSecurityApplicationTests {
 
     @Test
@@ -0,0 +1,117 @@
+package com.postgrad.securitydemo.audit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authentication.event.AuthenticationFailureBadCredentialsEvent;
+import org.springframework.security.authentication.event.AuthenticationSuccessEvent;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.core.Authentication;
+
+import java.time.Duration;
+import java.util.Locale;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AuditTrailTests {
+
+    private static final Authentication ALICE = new TestingAuthenticationToken("alice", null, "ROLE_USER");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    // The writer is not started, so recorded events stay in the buffer
+    private AuditTrail auditTrail(int bufferCapacity, double successRate, double failureRate,
+                                  double grantedRate, double deniedRate) {
+        return new AuditTrail(new ObjectMapper(), meterRegistry, true, bufferCapacity, Duration.ofMillis(10),
+                successRate, failureRate, grantedRate, deniedRate);
+    }
+
+    private double events(AuditCategory category, String result) {
+        return meterRegistry.get("audit.events")
+                .tag("category", category.name().toLowerCase(Locale.ROOT))
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+
+    @Test
+    void eachCategoryIsSampledAtItsOwnRate() {
+        AuditTrail auditTrail = auditTrail(16, 0.0, 1.0, 0.5, 1.0);
+        int trials = 10_000;
+        int granted = 0;
+        for (int i = 0; i < trials; i++) {
+            assertThat(auditTrail.isSampled(AuditCategory.AUTHENTICATION_SUCCESS)).isFalse();
+            assertThat(auditTrail.isSampled(AuditCategory.AUTHENTICATION_FAILURE)).isTrue();
+            if (auditTrail.isSampled(AuditCategory.AUTHORIZATION_GRANTED)) {
+                granted++;
+            }
+        }
+
+        // Ten standard deviations either side of the expected 5000
+        assertThat(granted).isBetween(4_500, 5_500);
+        assertThat(events(AuditCategory.AUTHENTICATION_SUCCESS, "sampled-out")).isEqualTo(trials);
+        assertThat(events(AuditCategory.AUTHENTICATION_FAILURE, "sampled-out")).isZero();
+        assertThat(events(AuditCategory.AUTHORIZATION_GRANTED, "sampled-out")).isEqualTo(trials - granted);
+    }
+
+    @Test
+    void disabledTrailSamplesNothing() {
+        AuditTrail auditTrail = new AuditTrail(new ObjectMapper(), meterRegistry, false, 16, Duration.ofMillis(10),
+                1.0, 1.0, 1.0, 1.0);
+
+        for (AuditCategory category : AuditCategory.values()) {
+            assertThat(auditTrail.isSampled(category)).isFalse();
+        }
+    }
+
+    @Test
+    void eventsAreDroppedAndCountedWhenTheBufferIsFull() {
+        AuditTrail auditTrail = auditTrail(4, 1.0, 1.0, 1.0, 1.0);
+
+        int accepted = 0;
+        for (int i = 0; i < 6; i++) {
+            if (auditTrail.record(AuditEvent.of(AuditCategory.AUTHORIZATION_DENIED, ALICE, "GET /api/admin", null))) {
+                accepted++;
+            }
+        }
+
+        assertThat(accepted).isEqualTo(4);
+        assertThat(events(AuditCategory.AUTHORIZATION_DENIED, "recorded")).isEqualTo(4);
+        assertThat(events(AuditCategory.AUTHORIZATION_DENIED, "dropped")).isEqualTo(2);
+        assertThat(meterRegistry.get("audit.buffer.size").gauge().value()).isEqualTo(4);
+    }
+
+    @Test
+    void authenticationListenerRecordsSampledOutcomes() {
+        AuditTrail auditTrail = auditTrail(16, 0.0, 1.0, 1.0, 1.0);
+        AuditAuthenticationListener listener = new AuditAuthenticationListener(auditTrail);
+
+        listener.onSuccess(new AuthenticationSuccessEvent(ALICE));
+        listener.onFailure(new AuthenticationFailureBadCredentialsEvent(ALICE, new BadCredentialsException("bad")));
+
+        assertThat(events(AuditCategory.AUTHENTICATION_SUCCESS, "sampled-out")).isEqualTo(1);
+        assertThat(events(AuditCategory.AUTHENTICATION_SUCCESS, "recorded")).isZero();
+        assertThat(events(AuditCategory.AUTHENTICATION_FAILURE, "recorded")).isEqualTo(1);
+        assertThat(meterRegistry.get("audit.buffer.size").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    void authorizationPublisherRecordsDecisionsButNotAbstentions() {
+        AuditTrail auditTrail = auditTrail(16, 1.0, 1.0, 1.0, 1.0);
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        beanFactory.registerSingleton("auditTrail", auditTrail);
+        AuditAuthorizationEventPublisher publisher = new AuditAuthorizationEventPublisher(
+                beanFactory.getBeanProvider(AuditTrail.class));
+
+        publisher.publishAuthorizationEvent(() -> ALICE, null, new AuthorizationDecision(false));
+        publisher.publishAuthorizationEvent(() -> ALICE, null, new AuthorizationDecision(true));
+        publisher.publishAuthorizationEvent(() -> ALICE, null, (AuthorizationDecision) null);
+
+        assertThat(events(AuditCategory.AUTHORIZATION_DENIED, "recorded")).isEqualTo(1);
+        assertThat(events(AuditCategory.AUTHORIZATION_GRANTED, "recorded")).isEqualTo(1);
+        assertThat(meterRegistry.get("audit.buffer.size").gauge().value()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,145 @@
+package com.postgrad.securitydemo.cache;
+
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CaffeineUserCacheTests {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final CaffeineUserCache cache =
+            new CaffeineUserCache(100, Duration.ofMinutes(10), false, Duration.ofMinutes(1), nanos::get);
+
+    private static UserRepresentation user(String id) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id);
+        return user;
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        int threads = 8;
+        CountDownLatch arrived = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // The load only finishes once every caller has reached get; late ones find it in flight or cached
+        List<Future<UserRepresentation>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                arrived.countDown();
+                return cache.get("u1", id -> {
+                    loads.incrementAndGet();
+                    try {
+                        arrived.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return user(id);
+                });
+            }));
+        }
+
+        for (Future<UserRepresentation> result : results) {
+            assertThat(result.get().getId()).isEqualTo("u1");
+        }
+        executor.shutdown();
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void failedLoadIsNegativelyCached() {
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(cache.get("missing", id -> {
+                loads.incrementAndGet();
+                return null;
+            })).isNull();
+        }
+
+        assertThat(loads).hasValue(1);
+        assertThat(cache.stats().negativeHitCount()).isEqualTo(4);
+
+        cache.invalidate("missing");
+        assertThat(cache.get("missing", CaffeineUserCacheTests::user)).isNotNull();
+    }
+
+    @Test
+    void entryExpiresAfterWrite() {
+        cache.put("u1", user("u1"));
+
+        nanos.addAndGet(Duration.ofMinutes(10).toNanos() - 1);
+        assertThat(cache.get("u1")).isNotNull();
+
+        nanos.incrementAndGet();
+        assertThat(cache.get("u1")).isNull();
+    }
+
+    @Test
+    void failedLoadIsRetriedAfterTheNegativeTtl() {
+        AtomicInteger loads = new AtomicInteger();
+        Function<String, UserRepresentation> missing = id -> {
+            loads.incrementAndGet();
+            return null;
+        };
+        cache.get("missing", missing);
+
+        nanos.addAndGet(Duration.ofMinutes(1).toNanos() - 1);
+        cache.get("missing", missing);
+        assertThat(loads).hasValue(1);
+
+        nanos.incrementAndGet();
+        cache.get("missing", missing);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void invalidationDuringALoadDiscardsTheLoadedUser() {
+        // The admin clear arrives while Keycloak is still answering
+        UserRepresentation loaded = cache.get("u1", id -> {
+            cache.invalidate(id);
+            return user(id);
+        });
+
+        assertThat(loaded).isNotNull();
+        assertThat(cache.get("u1")).isNull();
+    }
+
+    @Test
+    void invalidateAllDuringALoadDiscardsTheLoadedUser() {
+        cache.get("u1", id -> {
+            cache.invalidateAll();
+            return user(id);
+        });
+
+        assertThat(cache.get("u1")).isNull();
+    }
+
+    @Test
+    void invalidationDuringAFailedLoadIsNotNegativelyCached() {
+        AtomicInteger loads = new AtomicInteger();
+
+        cache.get("u1", id -> {
+            loads.incrementAndGet();
+            cache.invalidate(id);
+            return null;
+        });
+
+        assertThat(cache.get("u1", CaffeineUserCacheTests::user)).isNotNull();
+        assertThat(loads).hasValue(1);
+    }
+}
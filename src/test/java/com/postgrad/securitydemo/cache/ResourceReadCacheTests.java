@@ -0,0 +1,77 @@
+package com.postgrad.securitydemo.cache;
+
+import com.postgrad.securitydemo.dto.CursorPage;
+import com.postgrad.securitydemo.dto.ResourceSummary;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResourceReadCacheTests {
+
+    private final ResourceReadCache cache = new ResourceReadCache(
+            new CaffeineCacheManager(ResourceReadCache.PUBLIC_RESOURCES, ResourceReadCache.OWNER_RESOURCES));
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private CursorPage<ResourceSummary> page(String name) {
+        loads.incrementAndGet();
+        return new CursorPage<>(List.of(new ResourceSummary(1L, name, null, "alice", true, null, 0L)), null);
+    }
+
+    @Test
+    void pagesAreServedFromTheCacheUntilEvicted() {
+        cache.publicPage(null, 20, () -> page("old"));
+        assertThat(cache.publicPage(null, 20, () -> page("new")).items().get(0).name()).isEqualTo("old");
+
+        cache.evict(true, "alice");
+
+        assertThat(cache.publicPage(null, 20, () -> page("new")).items().get(0).name()).isEqualTo("new");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void ownerEvictionOnlyDropsThatOwnersPages() {
+        cache.ownerPage("alice", null, 20, () -> page("alice"));
+        cache.ownerPage("bob", null, 20, () -> page("bob"));
+        cache.publicPage(null, 20, () -> page("public"));
+
+        cache.evict(false, "alice");
+
+        cache.ownerPage("alice", null, 20, () -> page("alice"));
+        cache.ownerPage("bob", null, 20, () -> page("bob"));
+        cache.publicPage(null, 20, () -> page("public"));
+        assertThat(loads).hasValue(4);
+    }
+
+    @Test
+    void pageLoadedAcrossAnEvictionIsNotKept() {
+        // The write commits and evicts while this reader still holds the rows it read before
+        CursorPage<ResourceSummary> stale = cache.publicPage(null, 20, () -> {
+            CursorPage<ResourceSummary> rows = page("old");
+            cache.evict(true, "alice");
+            return rows;
+        });
+        assertThat(stale.items().get(0).name()).isEqualTo("old");
+
+        assertThat(cache.publicPage(null, 20, () -> page("new")).items().get(0).name()).isEqualTo("new");
+        assertThat(cache.publicPage(null, 20, () -> page("newer")).items().get(0).name()).isEqualTo("new");
+    }
+
+    @Test
+    void cachedPageDoesNotShareTheLoadedRows() {
+        List<ResourceSummary> rows = new ArrayList<>(List.of(
+                new ResourceSummary(1L, "first", null, "alice", true, null, 0L)));
+        cache.publicPage(null, 20, () -> CursorPage.of(rows, 20, ResourceSummary::id));
+
+        rows.add(new ResourceSummary(2L, "second", null, "alice", true, null, 0L));
+
+        CursorPage<ResourceSummary> cached = cache.publicPage(null, 20, () -> page("reloaded"));
+        assertThat(cached.items()).extracting(ResourceSummary::name).containsExactly("first");
+        assertThatThrownBy(() -> cached.items().clear()).isInstanceOf(UnsupportedOperationException.class);
+    }
+}
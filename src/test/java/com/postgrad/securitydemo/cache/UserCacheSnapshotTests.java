@@ -0,0 +1,76 @@
+package com.postgrad.securitydemo.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class UserCacheSnapshotTests {
+
+    private static final Instant WRITTEN = Instant.parse("2026-01-01T10:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    private static UserRepresentation user(String id) {
+        UserRepresentation user = new UserRepresentation();
+        user.setId(id);
+        user.setUsername("name-" + id);
+        user.setEmail(id + "@example.com");
+        user.setFirstName("Zoë");
+        user.setEnabled(true);
+        user.setCreatedTimestamp(1_700_000_000_000L);
+        user.setAttributes(Map.of("department", List.of("R&D", "Ops")));
+        return user;
+    }
+
+    private UserCacheSnapshot snapshot(Instant now) {
+        return new UserCacheSnapshot(directory.resolve("user-cache.snapshot"), Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    @Test
+    void restoresUsersWithTheTimeTheyHadLeft() throws IOException {
+        CaffeineUserCache cache = new CaffeineUserCache(100, Duration.ofHours(1), false, Duration.ofMinutes(1));
+        cache.put("u1", user("u1"), Duration.ofMinutes(30));
+        cache.put("u2", user("u2"), Duration.ofMinutes(5));
+        assertThat(snapshot(WRITTEN).write(cache)).isEqualTo(2);
+        assertThat(snapshot(WRITTEN).writtenAt()).isEqualTo(WRITTEN);
+
+        // Ten minutes later u2 has expired
+        List<UserCacheEntry> restored = new ArrayList<>();
+        assertThat(snapshot(WRITTEN.plus(Duration.ofMinutes(10))).read(restored::add)).isEqualTo(1);
+
+        UserCacheEntry entry = restored.get(0);
+        assertThat(entry.userId()).isEqualTo("u1");
+        assertThat(entry.timeToLive()).isBetween(Duration.ofMinutes(19), Duration.ofMinutes(20));
+        assertThat(entry.user()).usingRecursiveComparison().isEqualTo(user("u1"));
+    }
+
+    @Test
+    void missingOrDamagedSnapshotsAreNotRestored() throws IOException {
+        UserCacheSnapshot snapshot = snapshot(WRITTEN);
+        assertThat(snapshot.read(entry -> { })).isZero();
+
+        CaffeineUserCache cache = new CaffeineUserCache(100, Duration.ofHours(1), false, Duration.ofMinutes(1));
+        cache.put("u1", user("u1"));
+        snapshot.write(cache);
+        byte[] bytes = Files.readAllBytes(snapshot.path());
+        bytes[bytes.length / 2] ^= 0x40;
+        Files.write(snapshot.path(), bytes);
+
+        assertThatThrownBy(() -> snapshot.read(entry -> { })).isInstanceOf(IOException.class);
+    }
+}
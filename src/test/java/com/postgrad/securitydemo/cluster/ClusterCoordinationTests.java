@@ -0,0 +1,178 @@
+package com.postgrad.securitydemo.cluster;
+
+import com.postgrad.securitydemo.cache.UserCache;
+import com.postgrad.securitydemo.model.ClusterLease;
+import com.postgrad.securitydemo.repository.ClusterLeaseRepository;
+import com.postgrad.securitydemo.service.KeycloakUserService;
+import com.postgrad.securitydemo.testing.KeycloakStub;
+import com.postgrad.securitydemo.testing.StubbedApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Two application instances in one JVM, sharing one database and one Keycloak stub.
+ */
+class ClusterCoordinationTests {
+
+    private static KeycloakStub keycloak;
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void start() {
+        keycloak = KeycloakStub.start(KeycloakStub.DEFAULT_REALM, 50);
+        nodeA = startNode("node-a");
+        nodeB = startNode("node-b");
+    }
+
+    private static ConfigurableApplicationContext startNode(String nodeId, String... arguments) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:cluster;DB_CLOSE_DELAY=-1",
+                "--cluster.node-id=" + nodeId,
+                "--cluster.invalidation.poll-interval=PT0.05S",
+                "--cluster.invalidation.grace=PT1S",
+                // Sync runs are triggered by the tests
+                "--keycloak.sync.initial-delay=PT1H"));
+        args.addAll(List.of(arguments));
+        return StubbedApplication.start(keycloak, args.toArray(String[]::new));
+    }
+
+    @AfterAll
+    static void stop() {
+        nodeB.close();
+        nodeA.close();
+        keycloak.close();
+    }
+
+    @Test
+    void cacheClearReachesTheOtherNode() throws InterruptedException {
+        String userId = KeycloakStub.userId(3);
+        nodeA.getBean(KeycloakUserService.class).getUserInfo(userId);
+        nodeB.getBean(KeycloakUserService.class).getUserInfo(userId);
+        UserCache cacheOnB = nodeB.getBean(UserCache.class);
+        assertThat(cacheOnB.get(userId)).isNotNull();
+
+        nodeA.getBean(KeycloakUserService.class).clearUserCache(userId);
+
+        assertThat(await(() -> cacheOnB.get(userId) == null)).as("evicted on node B").isTrue();
+    }
+
+    @Test
+    void onlyTheLeaseHolderSyncsAndTheOtherNodeAppliesItsChanges() throws InterruptedException {
+        long usersCallsBefore = keycloak.requestCount(KeycloakStub.Endpoint.USERS);
+
+        nodeA.getBean(KeycloakUserService.class).scheduledUserSync();
+        nodeB.getBean(KeycloakUserService.class).scheduledUserSync();
+
+        // One page of 50 users, fetched by one node only
+        assertThat(keycloak.requestCount(KeycloakStub.Endpoint.USERS) - usersCallsBefore).isEqualTo(1);
+        String userId = KeycloakStub.userId(17);
+        UserCache cacheOnA = nodeA.getBean(UserCache.class);
+        UserCache cacheOnB = nodeB.getBean(UserCache.class);
+        assertThat(await(() -> cacheOnA.get(userId) != null && cacheOnB.get(userId) != null))
+                .as("user present on both nodes").isTrue();
+
+        long usersCallsAfterSync = keycloak.requestCount(KeycloakStub.Endpoint.USERS);
+        assertThat(nodeB.getBean(KeycloakUserService.class).getUserInfo(userId).getUsername()).isEqualTo("user17");
+        assertThat(nodeA.getBean(KeycloakUserService.class).getUserInfo(userId).getUsername()).isEqualTo("user17");
+        assertThat(keycloak.requestCount(KeycloakStub.Endpoint.USERS)).isEqualTo(usersCallsAfterSync);
+    }
+
+    @Test
+    void restartedNodeAppliesInvalidationsPublishedWhileItWasDown(@TempDir Path directory) throws InterruptedException {
+        String[] snapshot = {
+                "--keycloak.user-cache.snapshot.enabled=true",
+                "--keycloak.user-cache.snapshot.path=" + directory.resolve("user-cache.snapshot"),
+                "--keycloak.user-cache.snapshot.revalidation-jitter=PT1H"};
+        String cleared = KeycloakStub.userId(8);
+        String kept = KeycloakStub.userId(9);
+        try (ConfigurableApplicationContext nodeC = startNode("node-c", snapshot)) {
+            nodeC.getBean(KeycloakUserService.class).getUsersInfo(List.of(cleared, kept));
+        }
+
+        nodeA.getBean(KeycloakUserService.class).clearUserCache(cleared);
+
+        try (ConfigurableApplicationContext nodeC = startNode("node-c", snapshot)) {
+            UserCache cacheOnC = nodeC.getBean(UserCache.class);
+            assertThat(cacheOnC.contains(kept)).as("restored from the snapshot").isTrue();
+            assertThat(await(() -> !cacheOnC.contains(cleared))).as("invalidation replayed").isTrue();
+        }
+    }
+
+    @Test
+    void seedingALeaseThatExistsFailsInsteadOfOverwritingIt() {
+        assertThat(nodeA.getBean(ClusterLeases.class).tryAcquire("seeded", Duration.ofHours(1))).isTrue();
+        ClusterLeaseRepository repositoryOnB = nodeB.getBean(ClusterLeaseRepository.class);
+
+        assertThatThrownBy(() -> repositoryOnB.saveAndFlush(ClusterLease.unowned("seeded")))
+                .isInstanceOf(DataIntegrityViolationException.class);
+
+        assertThat(repositoryOnB.findById("seeded").orElseThrow().getOwner()).isEqualTo("node-a");
+        assertThat(nodeB.getBean(ClusterLeases.class).tryAcquire("seeded", Duration.ofHours(1))).isFalse();
+    }
+
+    @Test
+    void nodesRacingToCreateALeaseElectOneHolder() throws Exception {
+        List<ClusterLeases> contenders = List.of(
+                nodeA.getBean(ClusterLeases.class), nodeA.getBean(ClusterLeases.class),
+                nodeB.getBean(ClusterLeases.class), nodeB.getBean(ClusterLeases.class));
+        ExecutorService executor = Executors.newFixedThreadPool(contenders.size());
+        try {
+            // Several rounds, each on a lease row that does not exist yet
+            for (int round = 0; round < 20; round++) {
+                String name = "race-" + round;
+                CyclicBarrier start = new CyclicBarrier(contenders.size());
+                List<Future<Boolean>> results = new ArrayList<>();
+                for (ClusterLeases leases : contenders) {
+                    results.add(executor.submit(() -> {
+                        start.await(10, TimeUnit.SECONDS);
+                        return leases.tryAcquire(name, Duration.ofHours(1));
+                    }));
+                }
+
+                Set<String> winners = new HashSet<>();
+                for (int i = 0; i < contenders.size(); i++) {
+                    if (results.get(i).get(30, TimeUnit.SECONDS)) {
+                        winners.add(i < 2 ? "node-a" : "node-b");
+                    }
+                }
+                assertThat(winners).as("nodes holding %s", name).hasSize(1);
+                assertThat(nodeA.getBean(ClusterLeaseRepository.class).findById(name).orElseThrow().getOwner())
+                        .isEqualTo(winners.iterator().next());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return condition.getAsBoolean();
+    }
+}
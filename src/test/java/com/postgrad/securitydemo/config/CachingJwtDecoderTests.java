@@ -0,0 +1,157 @@
+package com.postgrad.securitydemo.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CachingJwtDecoderTests {
+
+    private static final Instant START = Instant.parse("2025-01-01T00:00:00Z");
+
+    private final MutableClock clock = new MutableClock(START);
+    private final AtomicInteger decodes = new AtomicInteger();
+    private final Map<String, Instant> expiries = new HashMap<>();
+
+    // Decodes "token-N" into a Jwt expiring at the instant registered for it; anything else is rejected
+    private final JwtDecoder delegate = token -> {
+        decodes.incrementAndGet();
+        if (!expiries.containsKey(token)) {
+            throw new BadJwtException("Unknown token " + token);
+        }
+        Jwt.Builder jwt = Jwt.withTokenValue(token).header("alg", "RS256").subject("alice").issuedAt(START);
+        Instant expiresAt = expiries.get(token);
+        if (expiresAt != null) {
+            jwt.expiresAt(expiresAt);
+        }
+        return jwt.build();
+    };
+
+    private String token(String value, Instant expiresAt) {
+        expiries.put(value, expiresAt);
+        return value;
+    }
+
+    @Test
+    void hitReturnsTheCachedJwtWithoutDecodingAgain() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, 10, clock);
+        String token = token("token-1", START.plus(Duration.ofMinutes(5)));
+
+        Jwt first = decoder.decode(token);
+        Jwt second = decoder.decode(token);
+
+        assertThat(second).isSameAs(first);
+        assertThat(decodes).hasValue(1);
+        assertThat(decoder.hitCount()).isEqualTo(1);
+        assertThat(decoder.missCount()).isEqualTo(1);
+    }
+
+    @Test
+    void entryIsServedUntilTheTokenExpiresAndNotAfter() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, 10, clock);
+        Instant expiresAt = START.plus(Duration.ofMinutes(5));
+        String token = token("token-1", expiresAt);
+        decoder.decode(token);
+
+        clock.set(expiresAt.minusMillis(1));
+        decoder.decode(token);
+        assertThat(decodes).hasValue(1);
+
+        clock.set(expiresAt);
+        decoder.decode(token);
+        assertThat(decodes).hasValue(2);
+        // The delegate's result is already expired, so it is not cached again
+        assertThat(decoder.size()).isZero();
+    }
+
+    @Test
+    void tokensWithoutExpiryAreNotCached() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, 10, clock);
+        String token = token("token-1", null);
+
+        decoder.decode(token);
+        decoder.decode(token);
+
+        assertThat(decodes).hasValue(2);
+        assertThat(decoder.size()).isZero();
+    }
+
+    @Test
+    void decodeFailuresAreNotCached() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, 10, clock);
+
+        assertThatThrownBy(() -> decoder.decode("forged")).isInstanceOf(BadJwtException.class);
+        assertThatThrownBy(() -> decoder.decode("forged")).isInstanceOf(BadJwtException.class);
+
+        assertThat(decodes).hasValue(2);
+        assertThat(decoder.size()).isZero();
+    }
+
+    @Test
+    void sizeIsBoundedAndExpiredEntriesAreEvictedFirst() {
+        CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, 10, clock);
+        for (int i = 0; i < 5; i++) {
+            decoder.decode(token("short-" + i, START.plus(Duration.ofMinutes(1))));
+        }
+        for (int i = 0; i < 5; i++) {
+            decoder.decode(token("long-" + i, START.plus(Duration.ofHours(1))));
+        }
+        assertThat(decoder.size()).isEqualTo(10);
+
+        clock.set(START.plus(Duration.ofMinutes(2)));
+        decoder.decode(token("new", START.plus(Duration.ofHours(1))));
+
+        // Only the expired entries had to go
+        assertThat(decoder.size()).isEqualTo(6);
+        int before = decodes.get();
+        for (int i = 0; i < 5; i++) {
+            decoder.decode("long-" + i);
+        }
+        assertThat(decodes).hasValue(before);
+
+        for (int i = 0; i < 20; i++) {
+            decoder.decode(token("more-" + i, START.plus(Duration.ofHours(1))));
+            assertThat(decoder.size()).isLessThanOrEqualTo(10);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private volatile Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void set(Instant now) {
+            this.now = now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
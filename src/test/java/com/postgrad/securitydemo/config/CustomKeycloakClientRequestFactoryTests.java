@@ -0,0 +1,108 @@
+package com.postgrad.securitydemo.config;
+
+import com.postgrad.securitydemo.testing.KeycloakStub;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.hc.core5.pool.PoolStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The pooled Keycloak transport against the Keycloak stub: connection reuse, timeouts and
+ * the pool gauges.
+ */
+class CustomKeycloakClientRequestFactoryTests {
+
+    private KeycloakStub keycloak;
+    private CustomKeycloakClientRequestFactory factory;
+
+    @BeforeEach
+    void start() {
+        keycloak = KeycloakStub.start();
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        if (factory != null) {
+            factory.close();
+        }
+        keycloak.close();
+    }
+
+    private RestTemplate restTemplate(int maxTotal, Duration connectionRequestTimeout, Duration socketTimeout) {
+        factory = new CustomKeycloakClientRequestFactory(new CustomKeycloakClientRequestFactory.Settings(
+                maxTotal, maxTotal, Duration.ofSeconds(2), connectionRequestTimeout, socketTimeout,
+                Duration.ofSeconds(30), Duration.ofSeconds(30), Duration.ofSeconds(2)));
+        return factory.createRestTemplate();
+    }
+
+    @Test
+    void sequentialCallsReuseOnePooledConnection() {
+        RestTemplate restTemplate = restTemplate(10, Duration.ofSeconds(1), Duration.ofSeconds(5));
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(restTemplate.getForObject(keycloak.jwkSetUri(), String.class)).contains("keys");
+        }
+
+        PoolStats stats = factory.getPoolStats();
+        assertThat(stats.getLeased()).isZero();
+        assertThat(stats.getAvailable()).isEqualTo(1);
+        assertThat(keycloak.requestCount(KeycloakStub.Endpoint.CERTS)).isEqualTo(5);
+    }
+
+    @Test
+    void slowResponseFailsAfterTheSocketTimeout() {
+        RestTemplate restTemplate = restTemplate(10, Duration.ofSeconds(1), Duration.ofMillis(200));
+        keycloak.latency(Duration.ofSeconds(2), Duration.ZERO);
+
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> restTemplate.getForObject(keycloak.jwkSetUri(), String.class))
+                .isInstanceOf(ResourceAccessException.class);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(2));
+    }
+
+    @Test
+    void exhaustedPoolFailsAfterTheConnectionRequestTimeout() throws Exception {
+        RestTemplate restTemplate = restTemplate(1, Duration.ofMillis(200), Duration.ofSeconds(5));
+        keycloak.latency(Duration.ofSeconds(1), Duration.ZERO);
+        CompletableFuture<String> holder = CompletableFuture.supplyAsync(
+                () -> restTemplate.getForObject(keycloak.jwkSetUri(), String.class));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (factory.getPoolStats().getLeased() == 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(factory.getPoolStats().getLeased()).isEqualTo(1);
+
+        long started = System.nanoTime();
+        assertThatThrownBy(() -> restTemplate.getForObject(keycloak.jwkSetUri(), String.class))
+                .isInstanceOf(ResourceAccessException.class);
+
+        assertThat(Duration.ofNanos(System.nanoTime() - started)).isLessThan(Duration.ofSeconds(1));
+        assertThat(holder.get(10, TimeUnit.SECONDS)).contains("keys");
+    }
+
+    @Test
+    void poolIsPublishedAsGauges() {
+        RestTemplate restTemplate = restTemplate(7, Duration.ofSeconds(1), Duration.ofSeconds(5));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new KeycloakConfig().keycloakHttpPoolMetrics(factory).bindTo(meterRegistry);
+
+        restTemplate.getForObject(keycloak.jwkSetUri(), String.class);
+
+        assertThat(meterRegistry.get("keycloak.http.pool.max").gauge().value()).isEqualTo(7);
+        assertThat(meterRegistry.get("keycloak.http.pool.available").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("keycloak.http.pool.leased").gauge().value()).isZero();
+        assertThat(meterRegistry.get("keycloak.http.pool.pending").gauge().value()).isZero();
+    }
+}
@@ -0,0 +1,124 @@
+package com.postgrad.securitydemo.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withException;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class KeycloakClientMetricsTests {
+
+    private static final String REALM = "http://keycloak/realms/demo";
+    private static final String ADMIN = "http://keycloak/admin/realms/demo";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RestTemplate restTemplate = new RestTemplate();
+    private MockRestServiceServer server;
+
+    @BeforeEach
+    void setUp() {
+        restTemplate.getInterceptors().add(new KeycloakClientMetrics(meterRegistry));
+        server = MockRestServiceServer.bindTo(restTemplate).ignoreExpectOrder(true).build();
+    }
+
+    @Test
+    void pathsAreGroupedByEndpoint() {
+        assertThat(KeycloakClientMetrics.endpoint("/realms/demo/protocol/openid-connect/token")).isEqualTo("token");
+        assertThat(KeycloakClientMetrics.endpoint("/realms/demo/protocol/openid-connect/certs")).isEqualTo("certs");
+        assertThat(KeycloakClientMetrics.endpoint("/admin/realms/demo/users")).isEqualTo("users");
+        assertThat(KeycloakClientMetrics.endpoint("/admin/realms/demo/users/3f2a")).isEqualTo("user");
+        assertThat(KeycloakClientMetrics.endpoint("/admin/realms/demo/users/3f2a/groups")).isEqualTo("other");
+    }
+
+    @Test
+    void successfulCallsAreTimedWithoutErrors() {
+        server.expect(requestTo(ADMIN + "/users/a")).andRespond(withSuccess("{}", MediaType.APPLICATION_JSON));
+        server.expect(requestTo(ADMIN + "/users/b")).andRespond(withSuccess("{}", MediaType.APPLICATION_JSON));
+
+        restTemplate.getForObject(ADMIN + "/users/a", String.class);
+        restTemplate.getForObject(ADMIN + "/users/b", String.class);
+
+        Timer timer = requests("user", "GET", "200", "SUCCESS");
+        assertThat(timer.count()).isEqualTo(2);
+        // Both user IDs share one timer
+        assertThat(meterRegistry.find("keycloak.client.requests").timers()).hasSize(1);
+        assertThat(meterRegistry.find("keycloak.client.errors").counters()).isEmpty();
+    }
+
+    @Test
+    void errorResponsesAreTimedAndCounted() {
+        server.expect(requestTo(REALM + "/protocol/openid-connect/token"))
+                .andRespond(withStatus(HttpStatus.UNAUTHORIZED));
+        server.expect(requestTo(REALM + "/protocol/openid-connect/token"))
+                .andRespond(withStatus(HttpStatus.UNAUTHORIZED));
+
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> restTemplate.postForObject(REALM + "/protocol/openid-connect/token",
+                    null, String.class)).isInstanceOf(HttpClientErrorException.Unauthorized.class);
+        }
+
+        assertThat(requests("token", "POST", "401", "CLIENT_ERROR").count()).isEqualTo(2);
+        assertThat(errors("token", "401").count()).isEqualTo(2);
+    }
+
+    @Test
+    void callsWithoutAResponseAreCountedAsIoErrors() {
+        server.expect(requestTo(REALM + "/protocol/openid-connect/certs"))
+                .andRespond(withException(new IOException("Connection reset")));
+
+        assertThatThrownBy(() -> restTemplate.getForObject(REALM + "/protocol/openid-connect/certs", String.class))
+                .isInstanceOf(ResourceAccessException.class);
+
+        assertThat(requests("certs", "GET", "IO_ERROR", "UNKNOWN").count()).isEqualTo(1);
+        assertThat(errors("certs", "IO_ERROR").count()).isEqualTo(1);
+    }
+
+    @Test
+    void metersAreRegisteredOncePerTagCombination() {
+        for (int i = 0; i < 3; i++) {
+            server.expect(requestTo(ADMIN + "/users")).andRespond(withSuccess("[]", MediaType.APPLICATION_JSON));
+        }
+        restTemplate.getForObject(ADMIN + "/users", String.class);
+        Timer first = requests("users", "GET", "200", "SUCCESS");
+
+        // A meter removed from the registry is not re-registered, because the interceptor keeps its own
+        meterRegistry.remove(first);
+        restTemplate.getForObject(ADMIN + "/users", String.class);
+        restTemplate.exchange(ADMIN + "/users", HttpMethod.GET, null, String.class);
+
+        assertThat(first.count()).isEqualTo(3);
+        assertThat(meterRegistry.find("keycloak.client.requests").timers()).isEmpty();
+    }
+
+    private Timer requests(String endpoint, String method, String status, String outcome) {
+        return meterRegistry.get("keycloak.client.requests")
+                .tag("endpoint", endpoint)
+                .tag("method", method)
+                .tag("status", status)
+                .tag("outcome", outcome)
+                .timer();
+    }
+
+    private Counter errors(String endpoint, String status) {
+        return meterRegistry.get("keycloak.client.errors")
+                .tag("endpoint", endpoint)
+                .tag("status", status)
+                .counter();
+    }
+}
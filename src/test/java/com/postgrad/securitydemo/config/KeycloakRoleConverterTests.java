@@ -0,0 +1,49 @@
+package com.postgrad.securitydemo.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KeycloakRoleConverterTests {
+
+    private static Jwt token(String subject, List<String> realmRoles, List<String> clientRoles) {
+        return Jwt.withTokenValue("token-" + subject)
+                .header("alg", "RS256")
+                .subject(subject)
+                .claim("scope", "openid profile")
+                .claim("realm_access", Map.of("roles", realmRoles))
+                .claim("resource_access", Map.of("security-demo-app", Map.of("roles", clientRoles)))
+                .build();
+    }
+
+    @Test
+    void memoizedConversionMatchesPlainConversion() {
+        Jwt jwt = token("alice", List.of("user"), List.of("admin"));
+
+        Collection<GrantedAuthority> plain = new SecurityConfig.KeycloakRoleConverter().convert(jwt);
+        Collection<GrantedAuthority> memoized = new SecurityConfig.KeycloakRoleConverter(true, 16).convert(jwt);
+
+        assertThat(memoized).containsExactlyInAnyOrderElementsOf(plain);
+        assertThat(memoized).extracting(GrantedAuthority::getAuthority)
+                .contains("SCOPE_openid", "SCOPE_profile", "ROLE_USER", "ROLE_ADMIN");
+    }
+
+    @Test
+    void tokensWithSameRolesShareAuthorities() {
+        SecurityConfig.KeycloakRoleConverter converter = new SecurityConfig.KeycloakRoleConverter(true, 16);
+
+        Collection<GrantedAuthority> first = converter.convert(token("alice", List.of("user"), List.of()));
+        Collection<GrantedAuthority> second = converter.convert(token("bob", List.of("user"), List.of()));
+        Collection<GrantedAuthority> admin = converter.convert(token("carol", List.of("user", "admin"), List.of()));
+
+        assertThat(second).isSameAs(first);
+        assertThat(admin).isNotSameAs(first);
+        assertThat(admin).extracting(GrantedAuthority::getAuthority).contains("ROLE_ADMIN");
+    }
+}
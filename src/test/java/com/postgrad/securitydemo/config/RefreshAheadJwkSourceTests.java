@@ -0,0 +1,130 @@
+package com.postgrad.securitydemo.config;
+
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the JWK source against a stub certs endpoint served from this JVM.
+ */
+class RefreshAheadJwkSourceTests {
+
+    private final AtomicReference<JWKSet> served = new AtomicReference<>();
+    private final AtomicInteger fetches = new AtomicInteger();
+    private HttpServer server;
+    private String certsUri;
+    private RefreshAheadJwkSource jwkSource;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/certs", exchange -> {
+            fetches.incrementAndGet();
+            byte[] body = served.get().toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        certsUri = "http://localhost:" + server.getAddress().getPort() + "/certs";
+    }
+
+    @AfterEach
+    void stopStub() {
+        if (jwkSource != null) {
+            jwkSource.close();
+        }
+        server.stop(0);
+    }
+
+    private static RSAKey newKey(String kid) throws Exception {
+        return new RSAKeyGenerator(2048).keyID(kid).generate();
+    }
+
+    private static JWKSelector byKid(String kid) {
+        return new JWKSelector(new JWKMatcher.Builder().keyID(kid).build());
+    }
+
+    private RefreshAheadJwkSource newSource(Duration minRefetchInterval) {
+        return new RefreshAheadJwkSource(certsUri, new RestTemplate(),
+                Duration.ofMinutes(10), Duration.ofMinutes(1), minRefetchInterval);
+    }
+
+    @Test
+    void prefetchesKeysOnStart() throws Exception {
+        served.set(new JWKSet(newKey("k1").toPublicJWK()));
+        jwkSource = newSource(Duration.ofSeconds(30));
+
+        jwkSource.start();
+        List<JWK> keys = jwkSource.get(byKid("k1"), null);
+
+        assertThat(keys).extracting(JWK::getKeyID).containsExactly("k1");
+        assertThat(fetches).hasValue(1);
+        assertThat(jwkSource.lastRefreshed()).isNotNull();
+    }
+
+    @Test
+    void unknownKidTriggersOneSharedRefetch() throws Exception {
+        served.set(new JWKSet(newKey("k1").toPublicJWK()));
+        jwkSource = newSource(Duration.ZERO);
+        jwkSource.start();
+
+        // Keycloak rotates to a new key
+        served.set(new JWKSet(List.of(newKey("k1").toPublicJWK(), newKey("k2").toPublicJWK())));
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch ready = new CountDownLatch(1);
+        List<Future<List<JWK>>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                ready.await();
+                return jwkSource.get(byKid("k2"), null);
+            }));
+        }
+        ready.countDown();
+        for (Future<List<JWK>> result : results) {
+            assertThat(result.get()).extracting(JWK::getKeyID).containsExactly("k2");
+        }
+        executor.shutdown();
+
+        // The prefetch plus exactly one refetch shared by every thread
+        assertThat(fetches).hasValue(2);
+    }
+
+    @Test
+    void unknownKidRefetchIsRateLimited() throws Exception {
+        served.set(new JWKSet(newKey("k1").toPublicJWK()));
+        jwkSource = newSource(Duration.ofMinutes(5));
+        jwkSource.start();
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(jwkSource.get(byKid("bogus"), null)).isEmpty();
+        }
+
+        assertThat(fetches).hasValue(1);
+    }
+}
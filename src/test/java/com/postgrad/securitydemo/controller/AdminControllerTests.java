@@ -0,0 +1,114 @@
+package com.postgrad.securitydemo.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.postgrad.securitydemo.testing.KeycloakStub;
+import com.postgrad.securitydemo.testing.StubbedApplication;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.RuntimeMXBean;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * System information and the Keycloak call metrics, as seen through the admin API.
+ */
+class AdminControllerTests {
+
+    private static final RequestPostProcessor ADMIN = jwt().jwt(token -> token.subject("admin"))
+            .authorities(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static KeycloakStub keycloak;
+    private static ConfigurableApplicationContext application;
+    private static MockMvc mvc;
+
+    @BeforeAll
+    static void start() {
+        keycloak = KeycloakStub.start();
+        application = StubbedApplication.start(keycloak,
+                "--spring.datasource.url=jdbc:h2:mem:admin-controller",
+                "--keycloak.sync.initial-delay=PT1H");
+        mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) application)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @AfterAll
+    static void stop() {
+        application.close();
+        keycloak.close();
+    }
+
+    @Test
+    void systemInfoReportsTheJvmUptimeAndMemory() throws Exception {
+        RuntimeMXBean runtime = ManagementFactory.getRuntimeMXBean();
+        long uptimeBefore = runtime.getUptime();
+
+        JsonNode info = objectMapper.readTree(mvc.perform(get("/api/admin/system/info").with(ADMIN))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+        long uptimeAfter = runtime.getUptime();
+
+        // The process start, not the time of the request
+        assertThat(Instant.parse(info.get("startTime").asText()))
+                .isEqualTo(Instant.ofEpochMilli(runtime.getStartTime()));
+        assertThat(info.get("uptimeMillis").asLong()).isBetween(uptimeBefore, uptimeAfter);
+        JsonNode heap = info.get("heap");
+        assertThat(heap.get("used").asLong()).isPositive();
+        assertThat(heap.get("committed").asLong()).isGreaterThanOrEqualTo(heap.get("used").asLong());
+        assertThat(info.get("nonHeap").get("used").asLong()).isPositive();
+        assertThat(info.get("gc").isArray()).isTrue();
+        info.get("gc").forEach(collector -> {
+            assertThat(collector.get("name").asText()).isNotBlank();
+            assertThat(collector.get("collections").asLong()).isGreaterThanOrEqualTo(0);
+        });
+        assertThat(info.get("threads").asInt()).isPositive();
+        assertThat(info.get("processors").asInt()).isEqualTo(Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    void systemInfoRequiresTheAdminRole() throws Exception {
+        mvc.perform(get("/api/admin/system/info")
+                        .with(jwt().authorities(new SimpleGrantedAuthority("ROLE_USER"))))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    void userSyncCallsToKeycloakAreTimed() throws Exception {
+        MeterRegistry meterRegistry = application.getBean(MeterRegistry.class);
+        long before = usersRequests(meterRegistry);
+
+        mvc.perform(get("/api/admin/users/sync").with(ADMIN)).andExpect(status().isOk());
+
+        assertThat(usersRequests(meterRegistry)).isGreaterThan(before);
+        assertThat(meterRegistry.get("keycloak.client.requests").tag("endpoint", "token").timer().count())
+                .isPositive();
+    }
+
+    private static long usersRequests(MeterRegistry meterRegistry) {
+        return meterRegistry.find("keycloak.client.requests")
+                .tag("endpoint", "users")
+                .tag("outcome", "SUCCESS")
+                .timers().stream()
+                .mapToLong(Timer::count)
+                .sum();
+    }
+}
@@ -0,0 +1,276 @@
+package com.postgrad.securitydemo.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.postgrad.securitydemo.service.KeycloakUserService;
+import com.postgrad.securitydemo.service.ResourceService;
+import com.postgrad.securitydemo.testing.KeycloakStub;
+import com.postgrad.securitydemo.testing.StubbedApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Conditional requests on resources (ETags, If-None-Match, If-Match and version conflicts), bulk
+ * writes and batch user lookups.
+ */
+class UserControllerTests {
+
+    private static final RequestPostProcessor ALICE = jwt().jwt(token -> token.subject("alice"))
+            .authorities(new SimpleGrantedAuthority("ROLE_USER"));
+    private static final RequestPostProcessor ADMIN = jwt().jwt(token -> token.subject("admin"))
+            .authorities(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static KeycloakStub keycloak;
+    private static ConfigurableApplicationContext application;
+    private static MockMvc mvc;
+
+    @BeforeAll
+    static void start() {
+        keycloak = KeycloakStub.start();
+        application = StubbedApplication.start(keycloak,
+                "--spring.datasource.url=jdbc:h2:mem:user-controller",
+                "--keycloak.sync.initial-delay=PT1H");
+        mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) application)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @AfterAll
+    static void stop() {
+        application.close();
+        keycloak.close();
+    }
+
+    @Test
+    void currentETagIsAnsweredWithNotModified() throws Exception {
+        long id = create();
+
+        mvc.perform(get("/api/user/resources/{id}", id).with(ALICE)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"v0\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"v0\""));
+        mvc.perform(get("/api/user/resources/{id}", id).with(ALICE)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"v7\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"v0\""))
+                .andExpect(jsonPath("$.id").value(id));
+    }
+
+    @Test
+    void missingResourceIsNotFound() throws Exception {
+        mvc.perform(get("/api/user/resources/{id}", Long.MAX_VALUE).with(ALICE)
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"v0\""))
+                .andExpect(status().isNotFound());
+        mvc.perform(get("/api/user/resources/{id}", Long.MAX_VALUE).with(ALICE))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void staleIfMatchIsAnsweredWithPreconditionFailed() throws Exception {
+        long id = create();
+
+        mvc.perform(update(id).header(HttpHeaders.IF_MATCH, "\"v0\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"v1\""));
+        mvc.perform(update(id).header(HttpHeaders.IF_MATCH, "\"v0\""))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(update(id).header(HttpHeaders.IF_MATCH, "\"not-a-version\""))
+                .andExpect(status().isPreconditionFailed());
+        mvc.perform(update(id).header(HttpHeaders.IF_MATCH, "*"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"v2\""));
+    }
+
+    @Test
+    void racingUpdateWithoutIfMatchIsAConflict() throws Exception {
+        // The service throws this when its version-checked UPDATE matches no row
+        ResourceService resourceService = mock(ResourceService.class);
+        when(resourceService.updateResource(anyLong(), any(), isNull()))
+                .thenThrow(new OptimisticLockingFailureException("Resource 1 was modified or deleted concurrently"));
+        MockMvc controller = MockMvcBuilders.standaloneSetup(
+                new UserController(resourceService, mock(KeycloakUserService.class), objectMapper)).build();
+
+        controller.perform(put("/api/user/resources/{id}", 1)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("name", "changed"))))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void bulkUpdateReportsStaleItemsAsConflicts() throws Exception {
+        long current = create();
+        long stale = create();
+
+        mvc.perform(put("/api/user/resources/bulk").with(ALICE)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(List.of(
+                                Map.of("id", current, "version", 0, "name", "changed"),
+                                Map.of("id", stale, "version", 3, "name", "changed")))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("UPDATED"))
+                .andExpect(jsonPath("$[1].status").value("CONFLICT"));
+        mvc.perform(get("/api/user/resources/{id}", stale).with(ALICE))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"v0\""));
+    }
+
+    @Test
+    void bulkCreateReportsNullItemsAsInvalid() throws Exception {
+        MvcResult result = mvc.perform(post("/api/user/resources/bulk").with(ALICE)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[{\"name\": \"first\"}, null, {\"name\": \"third\", \"id\": 99999}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[1].status").value("INVALID"))
+                .andExpect(jsonPath("$[1].index").value(1))
+                .andExpect(jsonPath("$[2].status").value("CREATED"))
+                .andReturn();
+
+        // Client-supplied IDs are replaced by assigned ones
+        JsonNode items = objectMapper.readTree(result.getResponse().getContentAsString());
+        for (int i : new int[] {0, 2}) {
+            long id = items.get(i).get("id").asLong();
+            assertThat(id).isNotEqualTo(99999L);
+            mvc.perform(get("/api/user/resources/{id}", id).with(ALICE))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.owner").value("alice"));
+        }
+    }
+
+    @Test
+    void bulkUpdateReportsNullAndIdlessItemsAsInvalid() throws Exception {
+        long id = create();
+
+        mvc.perform(put("/api/user/resources/bulk").with(ALICE)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[null, {\"name\": \"no id\"}, {\"id\": " + id + ", \"name\": \"changed\"}, "
+                                + "{\"id\": " + Long.MAX_VALUE + ", \"name\": \"missing\"}]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("INVALID"))
+                .andExpect(jsonPath("$[1].status").value("INVALID"))
+                .andExpect(jsonPath("$[2].status").value("UPDATED"))
+                .andExpect(jsonPath("$[3].status").value("NOT_FOUND"));
+        mvc.perform(get("/api/user/resources/{id}", id).with(ALICE))
+                .andExpect(jsonPath("$.name").value("changed"));
+    }
+
+    @Test
+    void bulkDeleteChecksEachId() throws Exception {
+        long owned = create();
+        long foreign = create();
+        RequestPostProcessor bob = jwt().jwt(token -> token.subject("bob"))
+                .authorities(new SimpleGrantedAuthority("ROLE_USER"));
+        mvc.perform(post("/api/user/resources/bulk/delete").with(bob)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + foreign + "]"))
+                .andExpect(jsonPath("$[0].status").value("FORBIDDEN"));
+
+        mvc.perform(post("/api/user/resources/bulk/delete").with(ALICE)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + owned + ", null, " + Long.MAX_VALUE + "]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status").value("DELETED"))
+                .andExpect(jsonPath("$[1].status").value("INVALID"))
+                .andExpect(jsonPath("$[2].status").value("NOT_FOUND"));
+        mvc.perform(get("/api/user/resources/{id}", owned).with(ALICE))
+                .andExpect(status().isNotFound());
+        mvc.perform(get("/api/user/resources/{id}", foreign).with(ALICE))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void anyUserCanLookUpOtherUsersPublicProfiles() throws Exception {
+        RequestPostProcessor user3 = jwt().jwt(token -> token.subject(KeycloakStub.userId(3)))
+                .authorities(new SimpleGrantedAuthority("ROLE_USER"));
+        String own = "$['" + KeycloakStub.userId(3) + "']";
+        String other = "$['" + KeycloakStub.userId(4) + "']";
+
+        mvc.perform(lookup(user3, KeycloakStub.userId(3), KeycloakStub.userId(4)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath(other + ".username").value("user4"))
+                .andExpect(jsonPath(other + ".id").value(KeycloakStub.userId(4)))
+                .andExpect(jsonPath(other + ".firstName").exists())
+                .andExpect(jsonPath(other + ".lastName").exists())
+                .andExpect(jsonPath(other + ".email").doesNotExist())
+                .andExpect(jsonPath(own + ".email").value("user3@example.com"));
+        mvc.perform(lookup(ALICE, KeycloakStub.userId(5)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$['" + KeycloakStub.userId(5) + "'].username").value("user5"))
+                .andExpect(jsonPath("$['" + KeycloakStub.userId(5) + "'].email").doesNotExist());
+    }
+
+    @Test
+    void adminsSeeEveryonesEmail() throws Exception {
+        mvc.perform(lookup(ADMIN, KeycloakStub.userId(3), KeycloakStub.userId(4)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$['" + KeycloakStub.userId(3) + "'].email").value("user3@example.com"))
+                .andExpect(jsonPath("$['" + KeycloakStub.userId(4) + "'].email").value("user4@example.com"));
+    }
+
+    @Test
+    void batchLookupRejectsNullAndBlankIds() throws Exception {
+        mvc.perform(post("/api/user/users/batch").with(ADMIN)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"" + KeycloakStub.userId(3) + "\", null]"))
+                .andExpect(status().isBadRequest());
+        mvc.perform(lookup(ADMIN, KeycloakStub.userId(3), " "))
+                .andExpect(status().isBadRequest());
+        mvc.perform(lookup(ALICE, ""))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static long create() throws Exception {
+        MvcResult result = mvc.perform(post("/api/user/resources").with(ALICE)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(Map.of("name", "resource", "description", "d"))))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"v0\""))
+                .andReturn();
+        return objectMapper.readTree(result.getResponse().getContentAsString()).get("id").asLong();
+    }
+
+    private static MockHttpServletRequestBuilder update(long id) throws Exception {
+        return put("/api/user/resources/{id}", id).with(ALICE)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("name", "changed")));
+    }
+
+    private static MockHttpServletRequestBuilder lookup(RequestPostProcessor caller, String... userIds)
+            throws Exception {
+        return post("/api/user/users/batch").with(caller)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(userIds)));
+    }
+}
@@ -0,0 +1,120 @@
+package com.postgrad.securitydemo.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.PathContainer;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.authorization.AuthorizationResult;
+import org.springframework.security.web.access.intercept.RequestAuthorizationContext;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PathDispatchAuthorizationManagerTests {
+
+    private static final AuthorizationManager<RequestAuthorizationContext> GRANT =
+            (authentication, context) -> new AuthorizationDecision(true);
+
+    // Declaration order matters: earlier rules shadow later ones
+    private static final Object[][] RULES = {
+            {null, "/api/public/**"},
+            {HttpMethod.GET, "/api/user/resources/export"},
+            {HttpMethod.DELETE, "/api/user/resources/*"},
+            {null, "/api/user/**"},
+            {HttpMethod.POST, "/api/user/resources"},
+            {null, "/api/admin/users/{id}"},
+            {null, "/api/admin/*/cache"},
+            {null, "/api/admin/**"},
+            {null, "/static/*.css"},
+            {null, "/static/{file:[a-z]+}.js"},
+            {null, "/files/{*rest}"},
+            {null, "/exact"},
+            {null, "/"},
+    };
+
+    private static final String[] PATHS = {
+            "/", "/exact", "/exact/", "/exactly", "/api", "/api/public", "/api/public/",
+            "/api/public/resources", "/api/user", "/api/user/resources", "/api/user/resources/",
+            "/api/user/resources/7", "/api/user/resources/export", "/api/user/resources/7/extra",
+            "/api/admin", "/api/admin/users", "/api/admin/users/", "/api/admin/users/42", "/api/admin/users/cache",
+            "/api/admin/resources/cache", "/api/admin//cache", "/api/admin/users/42/x", "/static/site.css", "/static/app.js",
+            "/static/App1.js", "/static/nested/site.css", "/files", "/files/a/b/c", "/other",
+    };
+
+    private static final String[] METHODS = {"GET", "POST", "PUT", "DELETE"};
+
+    private static PathDispatchAuthorizationManager compiled(int memoSize) {
+        PathDispatchAuthorizationManager.Builder builder = PathDispatchAuthorizationManager.builder().memoSize(memoSize);
+        for (Object[] rule : RULES) {
+            builder.rule((HttpMethod) rule[0], GRANT, (String) rule[1]);
+        }
+        return builder.anyRequest(GRANT).build();
+    }
+
+    /**
+     * The reference: test every rule in declaration order with Spring's PathPattern
+     */
+    private static String firstMatch(String method, String path) {
+        PathContainer container = PathContainer.parsePath(path);
+        for (Object[] rule : RULES) {
+            PathPattern pattern = PathPatternParser.defaultInstance.parse((String) rule[1]);
+            if ((rule[0] == null || rule[0].toString().equals(method)) && pattern.matches(container)) {
+                return (String) rule[1];
+            }
+        }
+        return "anyRequest";
+    }
+
+    @Test
+    void matchesLikeOrderedPathPatterns() {
+        for (int memoSize : new int[] {0, 4096}) {
+            PathDispatchAuthorizationManager manager = compiled(memoSize);
+            List<String> mismatches = new ArrayList<>();
+            for (int round = 0; round < 2; round++) {
+                for (String path : PATHS) {
+                    for (String method : METHODS) {
+                        String expected = firstMatch(method, path);
+                        String actual = manager.matchingPattern(method, path);
+                        if (!expected.equals(actual)) {
+                            mismatches.add(method + " " + path + ": expected " + expected + " but got " + actual);
+                        }
+                    }
+                }
+            }
+            assertThat(mismatches).as("memo size %d", memoSize).isEmpty();
+        }
+    }
+
+    @Test
+    void unmatchedRequestsAreDeniedWithoutAnyRequestRule() {
+        PathDispatchAuthorizationManager manager = PathDispatchAuthorizationManager.builder()
+                .rule(GRANT, "/api/public/**")
+                .build();
+
+        assertThat(authorize(manager, "GET", "/api/public/info").isGranted()).isTrue();
+        assertThat(authorize(manager, "GET", "/api/private").isGranted()).isFalse();
+    }
+
+    @Test
+    void memoIsBounded() {
+        PathDispatchAuthorizationManager manager = compiled(8);
+
+        for (int i = 0; i < 100; i++) {
+            manager.matchingPattern("GET", "/api/user/resources/" + i);
+        }
+
+        assertThat(manager.memoizedPaths()).isLessThanOrEqualTo(8);
+    }
+
+    private static AuthorizationResult authorize(PathDispatchAuthorizationManager manager, String method, String path) {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+        return manager.authorize(() -> new TestingAuthenticationToken("user", null), new RequestAuthorizationContext(request));
+    }
+}
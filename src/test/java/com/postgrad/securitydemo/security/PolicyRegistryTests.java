@@ -0,0 +1,159 @@
+package com.postgrad.securitydemo.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PolicyRegistryTests {
+
+    static class Policies {
+
+        @PolicyDefinition("owner")
+        public boolean isOwner(Authentication authentication, String owner) {
+            return authentication.getName().equals(owner);
+        }
+
+        @PolicyDefinition("result.owned")
+        public boolean ownsResult(Authentication authentication, String result) {
+            return authentication.getName().equals(result);
+        }
+
+        @PolicyDefinition("broken")
+        public boolean broken(Authentication authentication) {
+            throw new IllegalStateException("policy failure");
+        }
+    }
+
+    static class Secured {
+
+        @Policy(pre = "owner")
+        public void write(String owner, int amount) {
+        }
+
+        @Policy(post = "result.owned")
+        public String read() {
+            return null;
+        }
+
+        @Policy(pre = "broken")
+        public void guardedByBrokenPolicy() {
+        }
+
+        public void unsecured() {
+        }
+    }
+
+    static class UnknownPolicy {
+
+        @Policy(pre = "no.such.policy")
+        public void write(String owner) {
+        }
+    }
+
+    static class IncompatibleArgument {
+
+        @Policy(pre = "owner")
+        public void write(Long id) {
+        }
+    }
+
+    private static final Authentication ALICE = new TestingAuthenticationToken("alice", null, "ROLE_USER");
+
+    private static PolicyRegistry registry(Object... beans) {
+        DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        for (Object bean : beans) {
+            beanFactory.registerSingleton(bean.getClass().getSimpleName(), bean);
+        }
+        return new PolicyRegistry(beanFactory, new SimpleMeterRegistry());
+    }
+
+    private static PolicyRegistry resolved(Object... beans) {
+        PolicyRegistry registry = registry(beans);
+        registry.afterSingletonsInstantiated();
+        return registry;
+    }
+
+    private static Method method(Class<?> type, String name) {
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(name)) {
+                return method;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    @Test
+    void prePolicyReceivesLeadingArguments() {
+        PolicyRegistry registry = resolved(new Policies(), new Secured());
+        Method write = method(Secured.class, "write");
+
+        assertThat(registry.hasPrePolicy(write)).isTrue();
+        assertThat(registry.permitsInvocation(write, ALICE, new Object[] {"alice", 1})).isTrue();
+        assertThat(registry.permitsInvocation(write, ALICE, new Object[] {"bob", 1})).isFalse();
+        assertThat(registry.permitsInvocation(write, ALICE, new Object[] {null, 1})).isFalse();
+    }
+
+    @Test
+    void postPolicyReceivesReturnValue() {
+        PolicyRegistry registry = resolved(new Policies(), new Secured());
+        Method read = method(Secured.class, "read");
+
+        assertThat(registry.hasPrePolicy(read)).isFalse();
+        assertThat(registry.permitsResult(read, ALICE, "alice")).isTrue();
+        assertThat(registry.permitsResult(read, ALICE, "bob")).isFalse();
+    }
+
+    @Test
+    void unknownPolicyOrIncompatibleArgumentsFailStartup() {
+        assertThatThrownBy(() -> resolved(new Policies(), new UnknownPolicy()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Unknown policy 'no.such.policy'");
+        assertThatThrownBy(() -> resolved(new Policies(), new IncompatibleArgument()))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("expects java.lang.String");
+    }
+
+    @Test
+    void policiesFailClosedBeforeResolutionOrWhenTheyThrow() {
+        Method write = method(Secured.class, "write");
+        PolicyRegistry unresolved = registry(new Policies(), new Secured());
+
+        assertThatThrownBy(() -> unresolved.permitsInvocation(write, ALICE, new Object[] {"alice", 1}))
+                .isInstanceOf(IllegalStateException.class);
+
+        PolicyRegistry registry = resolved(new Policies(), new Secured());
+        assertThatThrownBy(() -> registry.permitsInvocation(method(Secured.class, "guardedByBrokenPolicy"), ALICE,
+                new Object[0])).hasMessage("policy failure");
+    }
+
+    @Test
+    void unsecuredMethodsHaveNoPolicies() {
+        PolicyRegistry registry = resolved(new Policies(), new Secured());
+        Method unsecured = method(Secured.class, "unsecured");
+
+        assertThat(registry.hasPrePolicy(unsecured)).isFalse();
+        assertThat(registry.hasPostPolicy(unsecured)).isFalse();
+    }
+
+    @Test
+    void evaluationsAreCountedPerPolicy() {
+        PolicyRegistry registry = resolved(new Policies(), new Secured());
+        Method write = method(Secured.class, "write");
+        registry.permitsInvocation(write, ALICE, new Object[] {"alice", 1});
+        registry.permitsInvocation(write, ALICE, new Object[] {"bob", 1});
+
+        List<PolicyRegistry.PolicyStats> stats = registry.stats();
+
+        assertThat(stats).extracting(PolicyRegistry.PolicyStats::name).containsExactly("broken", "owner", "result.owned");
+        assertThat(stats.get(1).calls()).isEqualTo(2);
+        assertThat(stats.get(1).denials()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,145 @@
+package com.postgrad.securitydemo.security;
+
+import com.postgrad.securitydemo.testing.KeycloakStub;
+import com.postgrad.securitydemo.testing.StubbedApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.jwt;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Rate limiting (429 with Retry-After) and the user sync bulkhead (503 with Retry-After),
+ * through the application's security filter chain.
+ */
+class RequestLimitTests {
+
+    private static final RequestPostProcessor ADMIN = jwt().jwt(token -> token.subject("admin"))
+            .authorities(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"));
+
+    private static KeycloakStub keycloak;
+    private static ConfigurableApplicationContext application;
+    private static MockMvc mvc;
+
+    @BeforeAll
+    static void start() {
+        keycloak = KeycloakStub.start();
+        application = StubbedApplication.start(keycloak,
+                "--spring.datasource.url=jdbc:h2:mem:request-limits",
+                "--keycloak.sync.initial-delay=PT1H",
+                "--security.rate-limit.enabled=true",
+                "--security.rate-limit.limits.user=3/PT1H",
+                "--security.rate-limit.limits.public=2/PT1H");
+        mvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) application)
+                .apply(springSecurity())
+                .build();
+    }
+
+    @AfterAll
+    static void stop() {
+        application.close();
+        keycloak.close();
+    }
+
+    @Test
+    void principalOverItsLimitGetsTooManyRequests() throws Exception {
+        RequestPostProcessor limited = user("limited");
+        for (int i = 0; i < 3; i++) {
+            mvc.perform(get("/api/user/resources").with(limited)).andExpect(status().isOk());
+        }
+
+        MvcResult rejected = mvc.perform(get("/api/user/resources").with(limited))
+                .andExpect(status().isTooManyRequests())
+                .andReturn();
+
+        // One permit per 20 minutes at 3 per hour
+        long retryAfter = Long.parseLong(rejected.getResponse().getHeader(HttpHeaders.RETRY_AFTER));
+        assertThat(retryAfter).isBetween(1L, TimeUnit.MINUTES.toSeconds(20));
+        mvc.perform(get("/api/user/resources").with(user("other"))).andExpect(status().isOk());
+    }
+
+    @Test
+    void anonymousRequestsAreLimitedPerClientAddress() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(get("/api/public/health").with(remoteAddress("203.0.113.1")))
+                    .andExpect(status().isOk());
+        }
+
+        mvc.perform(get("/api/public/health").with(remoteAddress("203.0.113.1")))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+        mvc.perform(get("/api/public/health").with(remoteAddress("203.0.113.2")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void forwardedForHeaderDoesNotSelectTheBucket() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            mvc.perform(get("/api/public/health").with(remoteAddress("203.0.113.3"))
+                            .header("X-Forwarded-For", "198.51.100." + i))
+                    .andExpect(status().isOk());
+        }
+
+        // Forwarded headers are off by default, so a rotating header gets no fresh bucket
+        mvc.perform(get("/api/public/health").with(remoteAddress("203.0.113.3"))
+                        .header("X-Forwarded-For", "198.51.100.9"))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    @Test
+    void concurrentUserSyncIsTurnedAwayWithServiceUnavailable() throws Exception {
+        BulkheadFilter.Compartment userSync = application.getBean(BulkheadFilter.class).compartments().get(0);
+        keycloak.latency(Duration.ofMillis(500), Duration.ZERO);
+        try {
+            CompletableFuture<MvcResult> running = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return mvc.perform(get("/api/admin/users/sync").with(ADMIN)).andReturn();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (userSync.active() == 0 && !running.isDone() && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            assertThat(userSync.active()).isEqualTo(1);
+
+            mvc.perform(get("/api/admin/users/sync").with(ADMIN))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "30"));
+
+            assertThat(running.get(30, TimeUnit.SECONDS).getResponse().getStatus()).isEqualTo(200);
+            assertThat(userSync.rejected()).isEqualTo(1);
+        } finally {
+            keycloak.latency(Duration.ZERO, Duration.ZERO);
+        }
+    }
+
+    private static RequestPostProcessor remoteAddress(String address) {
+        return request -> {
+            request.setRemoteAddr(address);
+            return request;
+        };
+    }
+
+    private static RequestPostProcessor user(String subject) {
+        return jwt().jwt(token -> token.subject(subject)).authorities(new SimpleGrantedAuthority("ROLE_USER"));
+    }
+}
@@ -0,0 +1,91 @@
+package com.postgrad.securitydemo.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestRateLimiterTests {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final RequestRateLimiter rateLimiter = RequestRateLimiter.builder()
+            .group("bulk", "2/PT1S", "/api/user/resources/all")
+            .group("user", "5/PT1S", "/api/user/**")
+            .idleTimeout(Duration.ofSeconds(10))
+            .nanoClock(now::get)
+            .build();
+
+    @Test
+    void burstIsLimitedAndTokensRefillOverThePeriod() {
+        RequestRateLimiter.Group user = rateLimiter.group("/api/user/profile");
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(rateLimiter.tryAcquire(user, "alice")).isZero();
+        }
+        long wait = rateLimiter.tryAcquire(user, "alice");
+        assertThat(wait).isEqualTo(TimeUnit.MILLISECONDS.toNanos(200));
+        assertThat(user.rejected()).isEqualTo(1);
+
+        now.addAndGet(wait);
+        assertThat(rateLimiter.tryAcquire(user, "alice")).isZero();
+        assertThat(rateLimiter.tryAcquire(user, "alice")).isPositive();
+    }
+
+    @Test
+    void bucketsArePerPrincipalAndGroup() {
+        RequestRateLimiter.Group bulk = rateLimiter.group("/api/user/resources/all");
+        RequestRateLimiter.Group user = rateLimiter.group("/api/user/resources");
+
+        assertThat(bulk.name()).isEqualTo("bulk");
+        assertThat(user.name()).isEqualTo("user");
+        assertThat(rateLimiter.group("/api/public/info")).isNull();
+
+        rateLimiter.tryAcquire(bulk, "alice");
+        rateLimiter.tryAcquire(bulk, "alice");
+        assertThat(rateLimiter.tryAcquire(bulk, "alice")).isPositive();
+        assertThat(rateLimiter.tryAcquire(bulk, "bob")).isZero();
+        assertThat(rateLimiter.tryAcquire(user, "alice")).isZero();
+    }
+
+    @Test
+    void idleBucketsAreEvicted() {
+        RequestRateLimiter.Group user = rateLimiter.group("/api/user/profile");
+        for (int i = 0; i < 100; i++) {
+            rateLimiter.tryAcquire(user, "user" + i);
+        }
+        assertThat(rateLimiter.size()).isEqualTo(100);
+
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        // Touch every stripe so each one gets swept
+        for (int i = 0; i < 1000; i++) {
+            rateLimiter.tryAcquire(user, "other" + i);
+        }
+
+        assertThat(rateLimiter.size()).isEqualTo(1000);
+    }
+
+    @Test
+    void concurrentRequestsNeverExceedTheBurst() throws Exception {
+        RequestRateLimiter.Group user = rateLimiter.group("/api/user/profile");
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(() -> {
+                if (rateLimiter.tryAcquire(user, "alice") == 0) {
+                    granted.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(granted.get()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,185 @@
+package com.postgrad.securitydemo.service;
+
+import com.postgrad.securitydemo.testing.KeycloakStub;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Admin token caching and renewal against the Keycloak stub's master realm.
+ */
+class KeycloakAdminTokenProviderTests {
+
+    private KeycloakStub keycloak;
+    private KeycloakAdminTokenProvider tokenProvider;
+
+    @BeforeEach
+    void start() {
+        keycloak = KeycloakStub.start();
+        tokenProvider = new KeycloakAdminTokenProvider(new RestTemplate());
+        ReflectionTestUtils.setField(tokenProvider, "keycloakServerUrl", keycloak.baseUrl());
+        ReflectionTestUtils.setField(tokenProvider, "adminUsername", "admin");
+        ReflectionTestUtils.setField(tokenProvider, "adminPassword", "admin");
+        ReflectionTestUtils.setField(tokenProvider, "adminClientId", "admin-cli");
+        ReflectionTestUtils.setField(tokenProvider, "refreshSkew", Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void stop() {
+        keycloak.close();
+    }
+
+    @Test
+    void tokenIsCachedWhileItOutlivesTheSkew() {
+        String token = tokenProvider.getAccessToken();
+
+        assertThat(token).isNotNull();
+        assertThat(tokenProvider.getAccessToken()).isEqualTo(token);
+        assertThat(keycloak.requestCount(KeycloakStub.Endpoint.TOKEN)).isEqualTo(1);
+    }
+
+    @Test
+    void tokenWithinTheSkewIsRenewedWithTheRefreshToken() {
+        // Shorter than the skew, so every token is already due for renewal
+        keycloak.accessTokenLifespan(Duration.ofSeconds(20));
+
+        String first = tokenProvider.getAccessToken();
+        String second = tokenProvider.getAccessToken();
+
+        assertThat(second).isNotNull().isNotEqualTo(first);
+        assertThat(keycloak.grantCount("password")).isEqualTo(1);
+        assertThat(keycloak.grantCount("refresh_token")).isEqualTo(1);
+    }
+
+    @Test
+    void rejectedRefreshTokenFallsBackToThePasswordGrant() {
+        keycloak.accessTokenLifespan(Duration.ofSeconds(20));
+        String first = tokenProvider.getAccessToken();
+        keycloak.revokeTokens();
+
+        String second = tokenProvider.getAccessToken();
+
+        assertThat(second).isNotNull().isNotEqualTo(first);
+        assertThat(keycloak.grantCount("refresh_token")).isEqualTo(1);
+        assertThat(keycloak.grantCount("password")).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentCallersShareOneTokenRequest() throws Exception {
+        keycloak.latency(Duration.ofMillis(200), Duration.ZERO);
+        int callers = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch ready = new CountDownLatch(callers);
+            List<Future<String>> tokens = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                tokens.add(executor.submit(() -> {
+                    ready.countDown();
+                    ready.await();
+                    return tokenProvider.getAccessToken();
+                }));
+            }
+
+            String token = tokens.get(0).get();
+            assertThat(token).isNotNull();
+            for (Future<String> other : tokens) {
+                assertThat(other.get()).isEqualTo(token);
+            }
+            assertThat(keycloak.requestCount(KeycloakStub.Endpoint.TOKEN)).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void callerArrivingAfterARenewalDoesNotStartAnother() throws Exception {
+        GatedClock clock = new GatedClock();
+        ReflectionTestUtils.setField(tokenProvider, "clock", clock);
+        String rejected = tokenProvider.getAccessToken();
+
+        // The late caller discards the rejected token, then stalls right after reading it back
+        CompletableFuture<String> late = CompletableFuture.supplyAsync(() -> {
+            clock.gate(Thread.currentThread());
+            return tokenProvider.forceRefresh(rejected);
+        });
+        assertThat(clock.stalled.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // Meanwhile another caller that saw the same 401 renews the token from start to finish
+        String replacement = tokenProvider.forceRefresh(rejected);
+        clock.release.countDown();
+
+        assertThat(replacement).isNotNull().isNotEqualTo(rejected);
+        assertThat(late.get(10, TimeUnit.SECONDS)).isEqualTo(replacement);
+        assertThat(keycloak.requestCount(KeycloakStub.Endpoint.TOKEN)).isEqualTo(2);
+    }
+
+    @Test
+    void forceRefreshOnlyReplacesTheRejectedToken() {
+        String rejected = tokenProvider.getAccessToken();
+
+        String replacement = tokenProvider.forceRefresh(rejected);
+        // A caller that saw the same rejection picks up the replacement without another request
+        String again = tokenProvider.forceRefresh(rejected);
+
+        assertThat(replacement).isNotNull().isNotEqualTo(rejected);
+        assertThat(again).isEqualTo(replacement);
+        assertThat(keycloak.grantCount("password")).isEqualTo(1);
+        assertThat(keycloak.grantCount("refresh_token")).isEqualTo(1);
+    }
+
+    /**
+     * System clock that holds one thread on its first reading until released
+     */
+    private static final class GatedClock extends Clock {
+
+        private final CountDownLatch stalled = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private volatile Thread gated;
+
+        void gate(Thread thread) {
+            gated = thread;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            if (Thread.currentThread() == gated) {
+                gated = null;
+                stalled.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return Instant.now();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.postgrad.securitydemo.service;
+
+import com.postgrad.securitydemo.cache.UserCache;
+import com.postgrad.securitydemo.testing.KeycloakStub;
+import com.postgrad.securitydemo.testing.StubbedApplication;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * User synchronization against the Keycloak stub.
+ */
+class KeycloakUserServiceTests {
+
+    private static KeycloakStub keycloak;
+    private static ConfigurableApplicationContext application;
+
+    @BeforeAll
+    static void start() {
+        keycloak = KeycloakStub.start(KeycloakStub.DEFAULT_REALM, 30);
+        application = StubbedApplication.start(keycloak,
+                "--spring.datasource.url=jdbc:h2:mem:user-service",
+                // Sync runs are triggered by the tests
+                "--keycloak.sync.initial-delay=PT1H");
+    }
+
+    @AfterAll
+    static void stop() {
+        application.close();
+        keycloak.close();
+    }
+
+    @Test
+    void incrementalSyncRewarmsClearedUsersThatDidNotChange() {
+        KeycloakUserService userService = application.getBean(KeycloakUserService.class);
+        UserCache userCache = application.getBean(UserCache.class);
+        userService.syncAllUsers(false);
+
+        userService.clearUserCache(KeycloakStub.userId(4));
+        UserSyncResult afterOneCleared = userService.syncAllUsers(false);
+
+        assertThat(afterOneCleared.changed()).isZero();
+        assertThat(userCache.contains(KeycloakStub.userId(4))).isTrue();
+
+        userService.clearAllCache();
+        UserSyncResult afterAllCleared = userService.syncAllUsers(false);
+
+        assertThat(afterAllCleared.completed()).isTrue();
+        assertThat(afterAllCleared.changed()).isZero();
+        assertThat(userCache.size()).isEqualTo(30);
+        assertThat(userCache.get(KeycloakStub.userId(29)).getUsername()).isEqualTo("user29");
+    }
+
+    @Test
+    void syncRunsAreTimedByModeAndCompletion() {
+        KeycloakUserService userService = application.getBean(KeycloakUserService.class);
+        Timer fullSyncs = application.getBean(MeterRegistry.class).get("keycloak.user.sync")
+                .tags("mode", "full", "completed", "true").timer();
+        long before = fullSyncs.count();
+
+        userService.syncAllUsers(true);
+        userService.syncAllUsers(true);
+
+        assertThat(fullSyncs.count() - before).isEqualTo(2);
+    }
+
+    @Test
+    void userCacheIsSavedOnShutdownAndRestoredOnStartup(@TempDir Path directory) {
+        String[] args = {
+                // Kept open across the restart, so the invalidation log outlives the first instance
+                "--spring.datasource.url=jdbc:h2:mem:user-service-restart;DB_CLOSE_DELAY=-1",
+                "--keycloak.sync.initial-delay=PT1H",
+                "--keycloak.user-cache.snapshot.enabled=true",
+                "--keycloak.user-cache.snapshot.path=" + directory.resolve("user-cache.snapshot"),
+                "--keycloak.user-cache.snapshot.revalidation-jitter=PT1H"};
+        try (ConfigurableApplicationContext first = StubbedApplication.start(keycloak, args)) {
+            first.getBean(KeycloakUserService.class).getUsersInfo(
+                    List.of(KeycloakStub.userId(11), KeycloakStub.userId(12)));
+        }
+
+        try (ConfigurableApplicationContext second = StubbedApplication.start(keycloak, args)) {
+            UserCache userCache = second.getBean(UserCache.class);
+            assertThat(userCache.contains(KeycloakStub.userId(11))).isTrue();
+            assertThat(userCache.contains(KeycloakStub.userId(12))).isTrue();
+        }
+    }
+
+    @Test
+    void rejectedAdminTokenIsRenewedAndTheCallRetried() {
+        KeycloakUserService userService = application.getBean(KeycloakUserService.class);
+        userService.getUserInfo(KeycloakStub.userId(6));
+        userService.clearUserCache(KeycloakStub.userId(7));
+        keycloak.revokeTokens();
+        long before = keycloak.requestCount(KeycloakStub.Endpoint.USERS);
+
+        assertThat(userService.getUserInfo(KeycloakStub.userId(7)).getUsername()).isEqualTo("user7");
+        assertThat(keycloak.requestCount(KeycloakStub.Endpoint.USERS) - before).isEqualTo(2);
+    }
+
+    @Test
+    void adminCallIsRetriedOnlyOnce() {
+        KeycloakUserService userService = application.getBean(KeycloakUserService.class);
+        userService.clearUserCache(KeycloakStub.userId(8));
+        keycloak.rejectAdminRequests(true);
+        try {
+            long before = keycloak.requestCount(KeycloakStub.Endpoint.USERS);
+
+            assertThat(userService.getUserInfo(KeycloakStub.userId(8))).isNull();
+            assertThat(keycloak.requestCount(KeycloakStub.Endpoint.USERS) - before).isEqualTo(2);
+        } finally {
+            keycloak.rejectAdminRequests(false);
+        }
+    }
+}
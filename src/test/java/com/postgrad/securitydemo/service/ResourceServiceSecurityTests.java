@@ -0,0 +1,223 @@
+package com.postgrad.securitydemo.service;
+
+import com.postgrad.securitydemo.dto.BulkItemResult;
+import com.postgrad.securitydemo.model.Resource;
+import com.postgrad.securitydemo.testing.KeycloakStub;
+import com.postgrad.securitydemo.testing.StubbedApplication;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The @Policy bindings on {@link ResourceService}, checked through the real method security
+ * interceptors: owners and admins may write, others are denied, and reads follow visibility.
+ */
+class ResourceServiceSecurityTests {
+
+    private static final Authentication ALICE = user("alice", "ROLE_USER");
+    private static final Authentication BOB = user("bob", "ROLE_USER", "ROLE_MANAGER");
+    private static final Authentication ADMIN = user("admin", "ROLE_USER", "ROLE_ADMIN");
+    private static final Authentication ANONYMOUS = new AnonymousAuthenticationToken("key", "anonymousUser",
+            AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+
+    private static final long MISSING_ID = Long.MAX_VALUE;
+
+    private static KeycloakStub keycloak;
+    private static ConfigurableApplicationContext application;
+    private static ResourceService resourceService;
+
+    @BeforeAll
+    static void start() {
+        keycloak = KeycloakStub.start();
+        application = StubbedApplication.start(keycloak,
+                "--spring.datasource.url=jdbc:h2:mem:resource-security",
+                "--keycloak.sync.initial-delay=PT1H");
+        resourceService = application.getBean(ResourceService.class);
+    }
+
+    @AfterAll
+    static void stop() {
+        application.close();
+        keycloak.close();
+    }
+
+    @AfterEach
+    void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void ownerAndAdminMayReadPrivateResourceOthersMayNot() {
+        Resource resource = create(ALICE, false);
+
+        assertThat(as(ALICE, () -> resourceService.getResourceById(resource.getId()))).isPresent();
+        assertThat(as(ADMIN, () -> resourceService.getResourceById(resource.getId()))).isPresent();
+        assertDenied(BOB, () -> resourceService.getResourceById(resource.getId()));
+
+        assertThat(as(ALICE, () -> resourceService.getResourceVersion(resource.getId()))).isPresent();
+        assertThat(as(ADMIN, () -> resourceService.getResourceVersion(resource.getId()))).isPresent();
+        assertDenied(BOB, () -> resourceService.getResourceVersion(resource.getId()));
+    }
+
+    @Test
+    void anyoneAuthenticatedMayReadPublicResource() {
+        Resource resource = create(ALICE, true);
+
+        assertThat(as(BOB, () -> resourceService.getResourceById(resource.getId()))).isPresent();
+        assertThat(as(BOB, () -> resourceService.getResourceVersion(resource.getId()))).isPresent();
+    }
+
+    @Test
+    void missingResourceReadsEmptyButCannotBeWritten() {
+        assertThat(as(BOB, () -> resourceService.getResourceById(MISSING_ID))).isEmpty();
+        assertThat(as(BOB, () -> resourceService.getResourceVersion(MISSING_ID))).isEmpty();
+        assertDenied(ADMIN, () -> resourceService.updateResource(MISSING_ID, changes(), null));
+        assertDenied(ADMIN, () -> {
+            resourceService.deleteResource(MISSING_ID);
+            return null;
+        });
+    }
+
+    @Test
+    void ownerAndAdminMayUpdateOthersMayNot() {
+        Resource resource = create(ALICE, false);
+
+        assertDenied(BOB, () -> resourceService.updateResource(resource.getId(), changes(), null));
+        Resource byOwner = as(ALICE, () -> resourceService.updateResource(resource.getId(), changes(), null));
+        Resource byAdmin = as(ADMIN, () -> resourceService.updateResource(resource.getId(), changes(), null));
+
+        assertThat(byOwner.getOwner()).isEqualTo("alice");
+        assertThat(byAdmin.getOwner()).isEqualTo("alice");
+        assertThat(byAdmin.getVersion()).isEqualTo(resource.getVersion() + 2);
+    }
+
+    @Test
+    void ownerAndAdminMayDeleteOthersMayNot() {
+        Resource owned = create(ALICE, false);
+        Resource other = create(ALICE, false);
+
+        assertDenied(BOB, () -> {
+            resourceService.deleteResource(owned.getId());
+            return null;
+        });
+        as(ALICE, () -> {
+            resourceService.deleteResource(owned.getId());
+            return null;
+        });
+        as(ADMIN, () -> {
+            resourceService.deleteResource(other.getId());
+            return null;
+        });
+
+        assertThat(as(ADMIN, () -> resourceService.getResourceById(owned.getId()))).isEmpty();
+        assertThat(as(ADMIN, () -> resourceService.getResourceById(other.getId()))).isEmpty();
+    }
+
+    @Test
+    void bulkOperationsCheckEachItem() {
+        Resource resource = create(ALICE, false);
+        Resource update = changes();
+        update.setId(resource.getId());
+
+        assertThat(as(BOB, () -> resourceService.updateResources(List.of(update))))
+                .extracting(BulkItemResult::status).containsExactly(BulkItemResult.Status.FORBIDDEN);
+        assertThat(as(ADMIN, () -> resourceService.updateResources(List.of(update))))
+                .extracting(BulkItemResult::status).containsExactly(BulkItemResult.Status.UPDATED);
+        assertThat(as(BOB, () -> resourceService.deleteResources(List.of(resource.getId()))))
+                .extracting(BulkItemResult::status).containsExactly(BulkItemResult.Status.FORBIDDEN);
+        assertThat(as(ALICE, () -> resourceService.deleteResources(List.of(resource.getId()))))
+                .extracting(BulkItemResult::status).containsExactly(BulkItemResult.Status.DELETED);
+    }
+
+    @Test
+    void anonymousCallersAreDenied() {
+        Resource resource = create(ALICE, true);
+
+        assertDenied(ANONYMOUS, () -> resourceService.getAllResources(null, 10));
+        assertDenied(ANONYMOUS, () -> resourceService.getAllResourceVersions(null, 10));
+        assertDenied(ANONYMOUS, () -> resourceService.exportResources(summary -> {
+        }));
+        assertDenied(ANONYMOUS, () -> resourceService.getMyResources(null, 10));
+        assertDenied(ANONYMOUS, () -> resourceService.createResource(changes()));
+        assertDenied(ANONYMOUS, () -> resourceService.createResources(List.of(changes())));
+        assertDenied(ANONYMOUS, () -> resourceService.updateResources(List.of(resource)));
+        assertDenied(ANONYMOUS, () -> resourceService.deleteResources(List.of(resource.getId())));
+        assertDenied(ANONYMOUS, () -> resourceService.updateResource(resource.getId(), changes(), null));
+    }
+
+    @Test
+    void anonymousCallersMayOnlyReadPublicResources() {
+        Resource publicResource = create(ALICE, true);
+        Resource privateResource = create(ALICE, false);
+
+        assertThat(as(ANONYMOUS, () -> resourceService.getResourceById(publicResource.getId()))).isPresent();
+        assertDenied(ANONYMOUS, () -> resourceService.getResourceById(privateResource.getId()));
+        assertDenied(ANONYMOUS, () -> resourceService.getResourceVersion(privateResource.getId()));
+    }
+
+    @Test
+    void authenticatedCallersMayListAndCreate() {
+        create(ALICE, false);
+
+        assertThat(as(BOB, () -> resourceService.getAllResources(null, 10)).items()).isNotEmpty();
+        assertThat(as(BOB, () -> resourceService.getAllResourceVersions(null, 10)).items()).isNotEmpty();
+        assertThat(as(BOB, () -> resourceService.exportResources(summary -> {
+        }))).isPositive();
+        assertThat(as(ALICE, () -> resourceService.getMyResources(null, 10)).items()).isNotEmpty();
+        assertThat(as(BOB, () -> resourceService.createResources(List.of(changes()))))
+                .extracting(BulkItemResult::status).containsExactly(BulkItemResult.Status.CREATED);
+    }
+
+    @Test
+    void roleListingRequiresTheRequestedRole() {
+        assertThat(as(BOB, () -> resourceService.getResourcesByRequiredRole("MANAGER"))).isNotNull();
+        assertThat(as(BOB, () -> resourceService.getResourcesByRequiredRole("ROLE_MANAGER"))).isNotNull();
+        assertDenied(ALICE, () -> resourceService.getResourcesByRequiredRole("MANAGER"));
+        assertDenied(ADMIN, () -> resourceService.getResourcesByRequiredRole(null));
+    }
+
+    private static Authentication user(String name, String... authorities) {
+        return UsernamePasswordAuthenticationToken.authenticated(name, null,
+                AuthorityUtils.createAuthorityList(authorities));
+    }
+
+    private static Resource changes() {
+        Resource resource = new Resource();
+        resource.setName("name");
+        resource.setDescription("description");
+        return resource;
+    }
+
+    private static Resource create(Authentication owner, boolean publicResource) {
+        Resource resource = changes();
+        resource.setPublicResource(publicResource);
+        return as(owner, () -> resourceService.createResource(resource));
+    }
+
+    private static <T> T as(Authentication authentication, Supplier<T> call) {
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+        try {
+            return call.get();
+        } finally {
+            SecurityContextHolder.clearContext();
+        }
+    }
+
+    private static void assertDenied(Authentication authentication, Supplier<?> call) {
+        assertThatThrownBy(() -> as(authentication, call)).isInstanceOf(AccessDeniedException.class);
+    }
+}
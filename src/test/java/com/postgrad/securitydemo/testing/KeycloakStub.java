@@ -0,0 +1,497 @@
+package com.postgrad.securitydemo.testing;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.crypto.RSASSAVerifier;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process stand-in for the parts of Keycloak this application talks to:
+ *
+ * - the token endpoint of every realm (password, refresh_token and client_credentials grants)
+ * - the certs (JWKS) endpoint of every realm
+ * - the admin users API of the application realm (paged listing and lookup by ID)
+ *
+ * Tokens are RS256-signed with a key generated at startup, so they verify against the served
+ * JWK set exactly like Keycloak's. The realm holds {@link #users(int)} generated users
+ * ("user0", "user1", ...). Every response can be delayed ({@link #latency(Duration, Duration)})
+ * and a fraction of them answered with 503 ({@link #errorRate(double)}); both can be changed
+ * while the stub is running. Issued tokens can be revoked ({@link #revokeTokens()}) and the
+ * admin API can be made to reject every token ({@link #rejectAdminRequests(boolean)}).
+ *
+ * Point the application at it with keycloak.auth-server-url = {@link #baseUrl()} and the
+ * resource server's issuer-uri/jwk-set-uri = {@link #issuer()}/{@link #jwkSetUri()}.
+ */
+public final class KeycloakStub implements AutoCloseable {
+
+    public static final String DEFAULT_REALM = "security-demo";
+
+    private static final Pattern TOKEN_PATH = Pattern.compile("/realms/([^/]+)/protocol/openid-connect/token");
+    private static final Pattern CERTS_PATH = Pattern.compile("/realms/([^/]+)/protocol/openid-connect/certs");
+    private static final Pattern USERS_PATH = Pattern.compile("/admin/realms/([^/]+)/users(?:/([^/]+))?");
+
+    // Version 4 / IETF variant bits, so generated IDs look like Keycloak's
+    private static final long USER_ID_MOST_SIGNIFICANT_BITS = 0x4000L;
+    private static final long USER_ID_VARIANT = 0x8000_0000_0000_0000L;
+
+    private static final Duration DEFAULT_ACCESS_TOKEN_LIFESPAN = Duration.ofMinutes(5);
+    private static final Duration REFRESH_TOKEN_LIFESPAN = Duration.ofMinutes(30);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String realm;
+    private final RSAKey key;
+    private final RSASSAVerifier verifier;
+    private final byte[] jwks;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String baseUrl;
+
+    private volatile int users;
+    private volatile long latencyNanos;
+    private volatile long jitterNanos;
+    private volatile double errorRate;
+    private volatile Duration accessTokenLifespan = DEFAULT_ACCESS_TOKEN_LIFESPAN;
+    private volatile boolean rejectAdminRequests;
+
+    // Tokens carry the generation they were issued in; revoking starts a new one
+    private final AtomicInteger tokenGeneration = new AtomicInteger();
+
+    private final Map<Endpoint, LongAdder> requests = new HashMap<>();
+    private final Map<String, LongAdder> grants = new ConcurrentHashMap<>();
+    private final LongAdder injectedErrors = new LongAdder();
+
+    /**
+     * Endpoint groups, for request counters
+     */
+    public enum Endpoint {
+        TOKEN, CERTS, USERS
+    }
+
+    private KeycloakStub(String realm, int users) throws JOSEException, IOException {
+        this.realm = realm;
+        this.users = users;
+        this.key = new RSAKeyGenerator(2048).keyID("stub-" + UUID.randomUUID()).generate();
+        this.verifier = new RSASSAVerifier(key.toRSAPublicKey());
+        this.jwks = new JWKSet(key.toPublicJWK()).toString().getBytes(StandardCharsets.UTF_8);
+        for (Endpoint endpoint : Endpoint.values()) {
+            requests.put(endpoint, new LongAdder());
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        // Unbounded so that injected latency delays responses rather than queueing them
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "keycloak-stub-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 128);
+        this.server.createContext("/", this::handle);
+        this.server.setExecutor(executor);
+        this.server.start();
+        this.baseUrl = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Starts a stub for the application realm with 100 users on an ephemeral port
+     */
+    public static KeycloakStub start() {
+        return start(DEFAULT_REALM, 100);
+    }
+
+    /**
+     * Starts a stub on an ephemeral port
+     *
+     * @param realm Realm whose users are served by the admin API
+     * @param users Number of users in that realm
+     */
+    public static KeycloakStub start(String realm, int users) {
+        try {
+            return new KeycloakStub(realm, users);
+        } catch (JOSEException | IOException e) {
+            throw new IllegalStateException("Cannot start Keycloak stub", e);
+        }
+    }
+
+    /**
+     * Delays every response by latency plus a uniformly distributed extra of up to jitter
+     */
+    public KeycloakStub latency(Duration latency, Duration jitter) {
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+        return this;
+    }
+
+    /**
+     * Answers the given fraction of requests (0.0 to 1.0) with 503 Service Unavailable
+     */
+    public KeycloakStub errorRate(double errorRate) {
+        if (errorRate < 0 || errorRate > 1) {
+            throw new IllegalArgumentException("Error rate must be between 0 and 1: " + errorRate);
+        }
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Changes the lifetime of access tokens issued from now on
+     */
+    public KeycloakStub accessTokenLifespan(Duration lifespan) {
+        this.accessTokenLifespan = lifespan;
+        return this;
+    }
+
+    /**
+     * Invalidates every access and refresh token issued so far
+     */
+    public KeycloakStub revokeTokens() {
+        tokenGeneration.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Answers every admin API request with 401, whatever token it carries
+     */
+    public KeycloakStub rejectAdminRequests(boolean reject) {
+        this.rejectAdminRequests = reject;
+        return this;
+    }
+
+    /**
+     * Changes the number of users in the realm
+     */
+    public KeycloakStub users(int users) {
+        this.users = users;
+        return this;
+    }
+
+    public String baseUrl() {
+        return baseUrl;
+    }
+
+    public String realm() {
+        return realm;
+    }
+
+    public String issuer() {
+        return issuer(realm);
+    }
+
+    public String jwkSetUri() {
+        return issuer() + "/protocol/openid-connect/certs";
+    }
+
+    public RSAKey key() {
+        return key;
+    }
+
+    /**
+     * @return Number of requests received by the given endpoint group, including failed ones
+     */
+    public long requestCount(Endpoint endpoint) {
+        return requests.get(endpoint).sum();
+    }
+
+    /**
+     * @return Number of token requests with the given grant type, including failed ones
+     */
+    public long grantCount(String grantType) {
+        LongAdder count = grants.get(grantType);
+        return count != null ? count.sum() : 0;
+    }
+
+    /**
+     * @return Number of requests answered with an injected 503
+     */
+    public long injectedErrorCount() {
+        return injectedErrors.sum();
+    }
+
+    /**
+     * @return ID of the generated user with the given index; the index is encoded in the UUID
+     */
+    public static String userId(int index) {
+        return new UUID(USER_ID_MOST_SIGNIFICANT_BITS, USER_ID_VARIANT | index).toString();
+    }
+
+    private static int userIndex(String userId) {
+        try {
+            UUID id = UUID.fromString(userId);
+            long index = id.getLeastSignificantBits() & ~USER_ID_VARIANT;
+            return id.getMostSignificantBits() == USER_ID_MOST_SIGNIFICANT_BITS && index <= Integer.MAX_VALUE
+                    ? (int) index : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Signs an application realm access token carrying the given realm roles
+     */
+    public String token(String username, String... realmRoles) {
+        return token(username, List.of(realmRoles), Map.of());
+    }
+
+    /**
+     * Signs an application realm access token
+     *
+     * @param realmRoles Roles placed in realm_access
+     * @param clientRoles Roles per client placed in resource_access
+     */
+    public String token(String username, List<String> realmRoles, Map<String, List<String>> clientRoles) {
+        return sign(realm, username, realmRoles, clientRoles, accessTokenLifespan);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private String issuer(String realmName) {
+        return baseUrl + "/realms/" + realmName;
+    }
+
+    private String sign(String realmName, String username, List<String> realmRoles,
+                        Map<String, List<String>> clientRoles, Duration lifespan) {
+        Instant now = Instant.now();
+        JWTClaimsSet.Builder claims = new JWTClaimsSet.Builder()
+                .issuer(issuer(realmName))
+                .subject(UUID.nameUUIDFromBytes(username.getBytes(StandardCharsets.UTF_8)).toString())
+                .jwtID(UUID.randomUUID().toString())
+                .claim("preferred_username", username)
+                .claim("scope", "openid profile email")
+                .claim("realm_access", Map.of("roles", realmRoles))
+                .claim("stub_generation", tokenGeneration.get())
+                .issueTime(Date.from(now))
+                .expirationTime(Date.from(now.plus(lifespan)));
+        if (!clientRoles.isEmpty()) {
+            Map<String, Object> resourceAccess = new LinkedHashMap<>();
+            clientRoles.forEach((client, roles) -> resourceAccess.put(client, Map.of("roles", roles)));
+            claims.claim("resource_access", resourceAccess);
+        }
+
+        try {
+            SignedJWT jwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(),
+                    claims.build());
+            jwt.sign(new RSASSASigner(key));
+            return jwt.serialize();
+        } catch (JOSEException e) {
+            throw new IllegalStateException("Cannot sign token", e);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            Matcher token = TOKEN_PATH.matcher(path);
+            Matcher certs = CERTS_PATH.matcher(path);
+            Matcher users = USERS_PATH.matcher(path);
+            Endpoint endpoint = token.matches() ? Endpoint.TOKEN
+                    : certs.matches() ? Endpoint.CERTS
+                    : users.matches() ? Endpoint.USERS
+                    : null;
+            if (endpoint == null) {
+                send(exchange, 404, Map.of("error", "Not found"));
+                return;
+            }
+            requests.get(endpoint).increment();
+
+            delay();
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.increment();
+                send(exchange, 503, Map.of("error", "Injected failure"));
+                return;
+            }
+
+            switch (endpoint) {
+                case TOKEN -> handleToken(exchange, token.group(1));
+                case CERTS -> sendBytes(exchange, 200, jwks);
+                case USERS -> handleUsers(exchange, users.group(1), users.group(2));
+            }
+        }
+    }
+
+    private void delay() {
+        long nanos = latencyNanos;
+        if (jitterNanos > 0) {
+            nanos += ThreadLocalRandom.current().nextLong(jitterNanos);
+        }
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Any credentials are accepted; "admin" users get the admin realm role
+     */
+    private void handleToken(HttpExchange exchange, String realmName) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            send(exchange, 405, Map.of("error", "Method not allowed"));
+            return;
+        }
+        Map<String, String> form = parseForm(exchange.getRequestBody());
+        String grantType = form.getOrDefault("grant_type", "");
+        grants.computeIfAbsent(grantType, type -> new LongAdder()).increment();
+        String username = switch (grantType) {
+            case "password" -> form.get("username");
+            case "client_credentials" -> "service-account-" + form.get("client_id");
+            case "refresh_token" -> subjectOf(form.get("refresh_token"), realmName);
+            default -> null;
+        };
+        if (username == null) {
+            send(exchange, 400, Map.of("error", "invalid_grant"));
+            return;
+        }
+
+        List<String> roles = username.contains("admin") ? List.of("admin", "user") : List.of("user");
+        Duration lifespan = accessTokenLifespan;
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("access_token", sign(realmName, username, roles, Map.of(), lifespan));
+        body.put("expires_in", lifespan.toSeconds());
+        body.put("refresh_token", sign(realmName, username, roles, Map.of(), REFRESH_TOKEN_LIFESPAN));
+        body.put("refresh_expires_in", REFRESH_TOKEN_LIFESPAN.toSeconds());
+        body.put("token_type", "Bearer");
+        send(exchange, 200, body);
+    }
+
+    private void handleUsers(HttpExchange exchange, String realmName, String userId) throws IOException {
+        if (rejectAdminRequests || !isAuthorized(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            send(exchange, 401, Map.of("error", "HTTP 401 Unauthorized"));
+            return;
+        }
+        if (!realm.equals(realmName)) {
+            send(exchange, 404, Map.of("error", "Realm not found."));
+            return;
+        }
+
+        int realmSize = users;
+        if (userId != null) {
+            int index = userIndex(userId);
+            if (index >= 0 && index < realmSize) {
+                send(exchange, 200, user(index));
+            } else {
+                send(exchange, 404, Map.of("error", "User not found"));
+            }
+            return;
+        }
+
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        int first = Math.max(0, Integer.parseInt(query.getOrDefault("first", "0")));
+        int max = Math.max(0, Integer.parseInt(query.getOrDefault("max", "100")));
+        List<Map<String, Object>> page = new ArrayList<>();
+        for (int i = first; i < realmSize && i < (long) first + max; i++) {
+            page.add(user(i));
+        }
+        send(exchange, 200, page);
+    }
+
+    private static Map<String, Object> user(int index) {
+        Map<String, Object> user = new LinkedHashMap<>();
+        user.put("id", userId(index));
+        user.put("username", "user" + index);
+        user.put("email", "user" + index + "@example.com");
+        user.put("firstName", "User");
+        user.put("lastName", String.valueOf(index));
+        user.put("enabled", true);
+        user.put("emailVerified", true);
+        user.put("createdTimestamp", 1_700_000_000_000L + index);
+        return user;
+    }
+
+    /**
+     * Accepts unexpired, unrevoked tokens signed by this stub, for any realm
+     */
+    private boolean isAuthorized(String authorization) {
+        if (authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        try {
+            SignedJWT jwt = SignedJWT.parse(authorization.substring("Bearer ".length()));
+            JWTClaimsSet claims = jwt.getJWTClaimsSet();
+            Date expiration = claims.getExpirationTime();
+            Long generation = claims.getLongClaim("stub_generation");
+            return jwt.verify(verifier) && expiration != null && expiration.after(new Date())
+                    && generation != null && generation == tokenGeneration.get();
+        } catch (ParseException | JOSEException e) {
+            return false;
+        }
+    }
+
+    private String subjectOf(String refreshToken, String realmName) {
+        if (refreshToken == null || !isAuthorized("Bearer " + refreshToken)) {
+            return null;
+        }
+        try {
+            JWTClaimsSet claims = SignedJWT.parse(refreshToken).getJWTClaimsSet();
+            return issuer(realmName).equals(claims.getIssuer()) ? claims.getStringClaim("preferred_username") : null;
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private void send(HttpExchange exchange, int status, Object body) throws IOException {
+        sendBytes(exchange, status, objectMapper.writeValueAsBytes(body));
+    }
+
+    private static void sendBytes(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        exchange.getResponseBody().write(body);
+    }
+
+    private static Map<String, String> parseForm(InputStream body) throws IOException {
+        return parseQuery(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,297 @@
+package com.postgrad.securitydemo.testing;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load generator for the HTTP API.
+ *
+ * A fixed number of workers send requests back to back for the configured duration. Each
+ * request picks a traffic class by weight (anonymous calls to /api/public, user calls to
+ * /api/user with one of the user tokens, admin calls to /api/admin with the admin token) and
+ * then one of that class's paths. Requests sent during the warmup are not recorded.
+ *
+ * {@link #main(String[])} runs the whole setup in one JVM: a {@link KeycloakStub}, the
+ * application booted against it, and a run of the driver; see the loadtest Maven profile.
+ */
+public final class LoadDriver {
+
+    /**
+     * Traffic classes, by required role
+     */
+    public enum Traffic {
+        PUBLIC, USER, ADMIN
+    }
+
+    private final URI baseUri;
+    private final List<String> userTokens;
+    private final String adminToken;
+    private final int concurrency;
+    private final Duration warmup;
+    private final Duration duration;
+    private final Map<Traffic, Integer> weights;
+    private final Map<Traffic, List<String>> paths;
+    private final HttpClient client;
+
+    private LoadDriver(Builder builder) {
+        this.baseUri = URI.create(builder.baseUrl);
+        this.userTokens = List.copyOf(builder.userTokens);
+        this.adminToken = builder.adminToken;
+        this.concurrency = builder.concurrency;
+        this.warmup = builder.warmup;
+        this.duration = builder.duration;
+        this.weights = new EnumMap<>(builder.weights);
+        this.paths = new EnumMap<>(builder.paths);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+
+        if (weights.getOrDefault(Traffic.USER, 0) > 0 && userTokens.isEmpty()) {
+            throw new IllegalArgumentException("User traffic needs at least one user token");
+        }
+        if (weights.getOrDefault(Traffic.ADMIN, 0) > 0 && adminToken == null) {
+            throw new IllegalArgumentException("Admin traffic needs an admin token");
+        }
+    }
+
+    public static Builder builder(String baseUrl) {
+        return new Builder(baseUrl);
+    }
+
+    /**
+     * Runs the load and blocks until it is done
+     */
+    public LoadReport run() throws InterruptedException {
+        Map<Traffic, LatencyHistogram> latencies = new EnumMap<>(Traffic.class);
+        Map<Traffic, LongAdder> errors = new EnumMap<>(Traffic.class);
+        for (Traffic traffic : weights.keySet()) {
+            latencies.put(traffic, new LatencyHistogram());
+            errors.put(traffic, new LongAdder());
+        }
+
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                running.add(workers.submit(() -> work(measureFrom, end, latencies, errors)));
+            }
+            for (Future<?> worker : running) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Load worker failed", e.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+
+        Duration elapsed = Duration.ofNanos(Math.min(System.nanoTime(), end) - measureFrom);
+        Map<Traffic, LoadReport.Result> results = new LinkedHashMap<>();
+        // Percentiles over all traffic need the samples together, so the classes are merged
+        LatencyHistogram overall = new LatencyHistogram();
+        long overallErrors = 0;
+        for (Traffic traffic : weights.keySet()) {
+            results.put(traffic, LoadReport.Result.of(latencies.get(traffic), errors.get(traffic).sum(), elapsed));
+            overall.add(latencies.get(traffic));
+            overallErrors += errors.get(traffic).sum();
+        }
+        LoadReport.Result total = LoadReport.Result.of(overall, overallErrors, elapsed);
+        return new LoadReport(elapsed, results, total);
+    }
+
+    private void work(long measureFrom, long end, Map<Traffic, LatencyHistogram> latencies,
+                      Map<Traffic, LongAdder> errors) {
+        int totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (!Thread.currentThread().isInterrupted()) {
+            long sent = System.nanoTime();
+            if (sent >= end) {
+                return;
+            }
+            Traffic traffic = pick(random.nextInt(totalWeight));
+            HttpRequest request = request(traffic, random);
+
+            boolean failed;
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                failed = response.statusCode() / 100 != 2;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failed = true;
+            }
+
+            if (sent >= measureFrom) {
+                latencies.get(traffic).record(System.nanoTime() - sent);
+                if (failed) {
+                    errors.get(traffic).increment();
+                }
+            }
+        }
+    }
+
+    private Traffic pick(int ticket) {
+        for (Map.Entry<Traffic, Integer> weight : weights.entrySet()) {
+            ticket -= weight.getValue();
+            if (ticket < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("No traffic class configured");
+    }
+
+    private HttpRequest request(Traffic traffic, ThreadLocalRandom random) {
+        List<String> candidates = paths.get(traffic);
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUri.resolve(candidates.get(random.nextInt(candidates.size()))))
+                .timeout(Duration.ofSeconds(30))
+                .GET();
+        switch (traffic) {
+            case USER -> request.header("Authorization", "Bearer " + userTokens.get(random.nextInt(userTokens.size())));
+            case ADMIN -> request.header("Authorization", "Bearer " + adminToken);
+            case PUBLIC -> { }
+        }
+        return request.build();
+    }
+
+    /**
+     * Starts a Keycloak stub and the application, drives load at it and prints the report.
+     *
+     * Settings are read from system properties:
+     * load.duration (PT30S), load.warmup (PT5S), load.concurrency (16),
+     * load.mix ("public=50,user=40,admin=10"), load.user-tokens (100),
+     * keycloak.stub.users (1000), keycloak.stub.latency (PT0S), keycloak.stub.jitter (PT0S)
+     * and keycloak.stub.error-rate (0).
+     */
+    public static void main(String[] args) throws Exception {
+        Duration duration = Duration.parse(System.getProperty("load.duration", "PT30S"));
+        Duration warmup = Duration.parse(System.getProperty("load.warmup", "PT5S"));
+        int concurrency = Integer.getInteger("load.concurrency", 16);
+        int userTokens = Integer.getInteger("load.user-tokens", 100);
+        String mix = System.getProperty("load.mix", "public=50,user=40,admin=10");
+
+        try (KeycloakStub stub = KeycloakStub.start(KeycloakStub.DEFAULT_REALM, Integer.getInteger("keycloak.stub.users", 1000))) {
+            stub.latency(Duration.parse(System.getProperty("keycloak.stub.latency", "PT0S")),
+                    Duration.parse(System.getProperty("keycloak.stub.jitter", "PT0S")));
+            stub.errorRate(Double.parseDouble(System.getProperty("keycloak.stub.error-rate", "0")));
+
+            try (ConfigurableApplicationContext application = StubbedApplication.start(stub, args)) {
+                Builder builder = LoadDriver.builder("http://localhost:" + StubbedApplication.port(application))
+                        .concurrency(concurrency)
+                        .warmup(warmup)
+                        .duration(duration)
+                        .adminToken(stub.token("admin", "admin", "user"));
+                for (int i = 0; i < userTokens; i++) {
+                    builder.userToken(stub.token("user" + i, "user"));
+                }
+                for (String entry : mix.split(",")) {
+                    String[] weight = entry.trim().split("=");
+                    builder.weight(Traffic.valueOf(weight[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(weight[1].trim()));
+                }
+
+                System.out.printf("Driving %d workers for %s (after %s warmup), mix %s%n", concurrency, duration, warmup, mix);
+                LoadReport report = builder.build().run();
+                System.out.print(report);
+                System.out.printf("Keycloak stub: %d token, %d certs, %d users requests, %d injected errors%n",
+                        stub.requestCount(KeycloakStub.Endpoint.TOKEN), stub.requestCount(KeycloakStub.Endpoint.CERTS),
+                        stub.requestCount(KeycloakStub.Endpoint.USERS), stub.injectedErrorCount());
+            }
+        }
+    }
+
+    /**
+     * Settings for a {@link LoadDriver}; by default 8 workers run for 10s after a 2s warmup,
+     * with a 50/40/10 public/user/admin mix over read-only endpoints
+     */
+    public static final class Builder {
+
+        private final String baseUrl;
+        private final List<String> userTokens = new ArrayList<>();
+        private String adminToken;
+        private int concurrency = 8;
+        private Duration warmup = Duration.ofSeconds(2);
+        private Duration duration = Duration.ofSeconds(10);
+        private final Map<Traffic, Integer> weights = new EnumMap<>(Map.of(
+                Traffic.PUBLIC, 50, Traffic.USER, 40, Traffic.ADMIN, 10));
+        private final Map<Traffic, List<String>> paths = new EnumMap<>(Map.of(
+                Traffic.PUBLIC, List.of("/api/public/resources", "/api/public/health"),
+                Traffic.USER, List.of("/api/user/resources", "/api/user/resources/all"),
+                Traffic.ADMIN, List.of("/api/admin/system/info", "/api/admin/users/cache/stats")));
+
+        private Builder(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public Builder userToken(String token) {
+            userTokens.add(token);
+            return this;
+        }
+
+        public Builder adminToken(String token) {
+            this.adminToken = token;
+            return this;
+        }
+
+        public Builder concurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        public Builder warmup(Duration warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        public Builder duration(Duration duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        /**
+         * Relative share of the given traffic class; 0 disables it
+         */
+        public Builder weight(Traffic traffic, int weight) {
+            if (weight > 0) {
+                weights.put(traffic, weight);
+            } else {
+                weights.remove(traffic);
+            }
+            return this;
+        }
+
+        /**
+         * Replaces the GET paths used for the given traffic class
+         */
+        public Builder paths(Traffic traffic, String... paths) {
+            this.paths.put(traffic, List.of(paths));
+            return this;
+        }
+
+        public LoadDriver build() {
+            return new LoadDriver(this);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.postgrad.securitydemo.testing;
+
+import com.postgrad.securitydemo.service.KeycloakUserService;
+import com.postgrad.securitydemo.service.UserSyncResult;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the application against the Keycloak stub and drives a short burst of load at it.
+ */
+class LoadHarnessTests {
+
+    private static KeycloakStub keycloak;
+    private static ConfigurableApplicationContext application;
+
+    @BeforeAll
+    static void start() {
+        keycloak = KeycloakStub.start(KeycloakStub.DEFAULT_REALM, 1200);
+        application = StubbedApplication.start(keycloak, "--keycloak.sync.page-size=500");
+    }
+
+    @AfterAll
+    static void stop() {
+        application.close();
+        keycloak.close();
+    }
+
+    @Test
+    void userSyncPagesThroughTheStubRealm() {
+        KeycloakUserService userService = application.getBean(KeycloakUserService.class);
+
+        UserSyncResult result = userService.syncAllUsers(true);
+
+        assertThat(result.completed()).isTrue();
+        assertThat(result.pages()).isEqualTo(3);
+        assertThat(result.fetched()).isEqualTo(1200);
+        assertThat(userService.getUserInfo(KeycloakStub.userId(7)))
+                .extracting(UserRepresentation::getUsername)
+                .isEqualTo("user7");
+    }
+
+    @Test
+    void injectedErrorsReachTheApplication() {
+        KeycloakUserService userService = application.getBean(KeycloakUserService.class);
+        keycloak.errorRate(1.0);
+        try {
+            userService.clearUserCache(KeycloakStub.userId(42));
+
+            assertThat(userService.getUserInfo(KeycloakStub.userId(42))).isNull();
+            assertThat(keycloak.injectedErrorCount()).isPositive();
+        } finally {
+            keycloak.errorRate(0);
+        }
+    }
+
+    @Test
+    void loadRunReportsEveryTrafficClass() throws InterruptedException {
+        LoadDriver.Builder driver = LoadDriver.builder("http://localhost:" + StubbedApplication.port(application))
+                .concurrency(4)
+                .warmup(Duration.ofMillis(500))
+                .duration(Duration.ofSeconds(2))
+                .adminToken(keycloak.token("admin", "admin", "user"));
+        for (int i = 0; i < 10; i++) {
+            driver.userToken(keycloak.token("user" + i, "user"));
+        }
+
+        LoadReport report = driver.build().run();
+
+        assertThat(report.traffic()).containsOnlyKeys(LoadDriver.Traffic.values());
+        report.traffic().forEach((traffic, result) -> {
+            assertThat(result.requests()).as("%s requests", traffic).isPositive();
+            assertThat(result.errors()).as("%s errors", traffic).isZero();
+            assertThat(result.p50Millis()).isLessThanOrEqualTo(result.p99Millis());
+            assertThat(result.p99Millis()).isLessThanOrEqualTo(result.p999Millis());
+        });
+        assertThat(report.total().throughput()).isPositive();
+    }
+}
@@ -0,0 +1,52 @@
+package com.postgrad.securitydemo.testing;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Outcome of a {@link LoadDriver} run, per traffic class and overall
+ *
+ * @param elapsed Length of the measured part of the run
+ * @param traffic Results per traffic class, in the order they were configured
+ * @param total Results over all traffic classes
+ */
+public record LoadReport(Duration elapsed, Map<LoadDriver.Traffic, Result> traffic, Result total) {
+
+    /**
+     * @param requests Number of completed requests
+     * @param errors Requests that failed or did not answer 2xx
+     * @param p50Millis Median latency
+     * @param p99Millis 99th percentile latency
+     * @param p999Millis 99.9th percentile latency
+     * @param throughput Requests per second
+     */
+    public record Result(long requests, long errors, double p50Millis, double p99Millis, double p999Millis,
+                         double throughput) {
+
+        static Result of(LatencyHistogram histogram, long errors, Duration elapsed) {
+            double seconds = Math.max(1, elapsed.toNanos()) / 1e9;
+            return new Result(histogram.count(), errors,
+                    histogram.percentileNanos(50) / 1e6,
+                    histogram.percentileNanos(99) / 1e6,
+                    histogram.percentileNanos(99.9) / 1e6,
+                    histogram.count() / seconds);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT,
+                "%-8s %10s %8s %10s %10s %10s %12s%n", "traffic", "requests", "errors", "p50 ms", "p99 ms", "p999 ms", "req/s"));
+        traffic.forEach((name, result) -> row(table, name.name().toLowerCase(Locale.ROOT), result));
+        row(table, "total", total);
+        table.append(String.format(Locale.ROOT, "measured over %.1fs%n", elapsed.toMillis() / 1000.0));
+        return table.toString();
+    }
+
+    private static void row(StringBuilder table, String name, Result result) {
+        table.append(String.format(Locale.ROOT, "%-8s %10d %8d %10.2f %10.2f %10.2f %12.1f%n", name,
+                result.requests(), result.errors(), result.p50Millis(), result.p99Millis(), result.p999Millis(),
+                result.throughput()));
+    }
+}
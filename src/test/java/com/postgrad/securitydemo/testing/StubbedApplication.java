@@ -0,0 +1,66 @@
+package com.postgrad.securitydemo.testing;
+
+import com.postgrad.securitydemo.SpringSecurityApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Boots the application on a random port against a {@link KeycloakStub}, with request and SQL
+ * logging turned down so that measurements are not dominated by console output. Per-principal
+ * rate limiting is off, since load runs deliberately send more than a single client may.
+ * Arguments passed to {@link #start(KeycloakStub, String...)} replace these defaults.
+ */
+public final class StubbedApplication {
+
+    private StubbedApplication() {
+    }
+
+    /**
+     * @param stub Keycloak stand-in to use for tokens, signing keys and the admin API
+     * @param arguments Additional --name=value arguments, overriding the defaults
+     * @return The running application; its port is in local.server.port
+     */
+    public static ConfigurableApplicationContext start(KeycloakStub stub, String... arguments) {
+        // Command-line arguments, so they take precedence over application.yml
+        List<String> defaults = List.of(
+                "--server.port=0",
+                "--keycloak.auth-server-url=" + stub.baseUrl(),
+                "--keycloak.realm=" + stub.realm(),
+                "--spring.security.oauth2.resourceserver.jwt.issuer-uri=" + stub.issuer(),
+                "--spring.security.oauth2.resourceserver.jwt.jwk-set-uri=" + stub.jwkSetUri(),
+                "--spring.jpa.show-sql=false",
+                "--security.rate-limit.enabled=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.security=WARN",
+                "--logging.level.org.springframework.security.oauth2=WARN",
+                "--logging.level.org.springframework.security.jwt=WARN",
+                "--logging.level.org.keycloak=WARN",
+                "--logging.level.com.postgrad.securitydemo=WARN",
+                "--logging.level.com.postgrad.securitydemo.config=WARN");
+        // Spring joins repeated options with commas, so replace defaults instead of appending
+        Map<String, String> args = new LinkedHashMap<>();
+        for (String argument : defaults) {
+            args.put(optionName(argument), argument);
+        }
+        for (String argument : arguments) {
+            args.put(optionName(argument), argument);
+        }
+        return new SpringApplicationBuilder(SpringSecurityApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .run(args.values().toArray(String[]::new));
+    }
+
+    private static String optionName(String argument) {
+        int equals = argument.indexOf('=');
+        return equals < 0 ? argument : argument.substring(0, equals);
+    }
+
+    public static int port(ConfigurableApplicationContext context) {
+        return context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+    }
+}